@@ -0,0 +1,81 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the color table of {@link ColorCalculator} with computing the colors per call. Runs on a device,
+ * as the color conversions of {@link android.graphics.Color} are not available on the JVM.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ColorCalculatorTimingTest {
+
+    private static final String TAG = "ColorCalculatorTiming";
+    // the hand, the hour digit and the 24 markers of a frame
+    private static final int COLORS_PER_FRAME = 26;
+    private static final int FRAMES = 2000;
+
+    @Test
+    public void tableHoldsTheComputedColors() {
+        ColorCalculator colorCalculator = new ColorCalculator();
+        float[] hsvVals = new float[3];
+        for (int step = 0; step < WatchFaceConstants.DIAL_STEPS; step++) {
+            float degrees = (float) step / WatchFaceConstants.DIAL_STEPS_PER_DEGREE;
+            assertEquals(ColorCalculator.computeColorDegrees(degrees, hsvVals), colorCalculator.getColorDegrees(degrees));
+        }
+    }
+
+    @Test
+    public void tableIsFasterThanComputing() {
+        ColorCalculator colorCalculator = new ColorCalculator();
+        float[] hsvVals = new float[3];
+        // warm up both paths
+        lookUp(colorCalculator);
+        compute(hsvVals);
+
+        long start = System.nanoTime();
+        int lookedUp = lookUp(colorCalculator);
+        long lookupNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        int computed = compute(hsvVals);
+        long computeNanos = System.nanoTime() - start;
+
+        Log.i(TAG, "Colors of " + FRAMES + " frames: table " + lookupNanos / 1000 + " us, computed "
+                + computeNanos / 1000 + " us");
+        assertEquals(computed, lookedUp);
+        // the table saves the blending and two HSV conversions per color, a margin keeps the test stable
+        assertTrue("table " + lookupNanos + " ns, computed " + computeNanos + " ns", lookupNanos * 4 < computeNanos);
+    }
+
+    private static int lookUp(ColorCalculator colorCalculator) {
+        int checksum = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            for (int i = 0; i < COLORS_PER_FRAME; i++) {
+                checksum += colorCalculator.getColorDegrees(degreesOf(frame, i));
+            }
+        }
+        return checksum;
+    }
+
+    private static int compute(float[] hsvVals) {
+        int checksum = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            for (int i = 0; i < COLORS_PER_FRAME; i++) {
+                checksum += ColorCalculator.computeColorDegrees(degreesOf(frame, i), hsvVals);
+            }
+        }
+        return checksum;
+    }
+
+    private static float degreesOf(int frame, int i) {
+        // minute of the frame, advanced by the hour of the marker
+        int step = (frame + i * 60) % WatchFaceConstants.DIAL_STEPS;
+        return (float) step / WatchFaceConstants.DIAL_STEPS_PER_DEGREE;
+    }
+}
@@ -0,0 +1,120 @@
+package ch.heuscher.h24watchface;
+
+import static ch.heuscher.h24watchface.WatchFaceConstants.ALARM_DISPLAY_WINDOW_HOURS;
+import static ch.heuscher.h24watchface.WatchFaceConstants.DEGREES_PER_HOUR;
+import static ch.heuscher.h24watchface.WatchFaceConstants.DEGREES_PER_MINUTE;
+
+import android.app.AlarmManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the trigger time of the next alarm clock and the angle of its marker on the dial, so the
+ * {@link AlarmManager} is not asked on every frame. The alarm is read again only when
+ * {@link AlarmManager#ACTION_NEXT_ALARM_CLOCK_CHANGED} is broadcast, or when the engine reports a change of
+ * the time or the time zone with {@link #onTimeChanged()}.
+ */
+public class AlarmMonitor {
+
+    private static final String TAG = "AlarmMonitor";
+    private static final long NO_ALARM = Long.MAX_VALUE;
+    private static final long DISPLAY_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(ALARM_DISPLAY_WINDOW_HOURS);
+
+    private final Context mContext;
+    private final Runnable mOnAlarmChanged;
+    private final BroadcastReceiver mAlarmReceiver;
+    private boolean mIsRegistered = false;
+
+    // only touched on the main thread, where the broadcasts are delivered
+    private long mTriggerTime = NO_ALARM;
+    private float mDegreesFromNorth = 0;
+
+    /**
+     * @param context The context to receive the alarm broadcasts with
+     * @param onAlarmChanged Called on the main thread when the next alarm changed
+     */
+    public AlarmMonitor(Context context, Runnable onAlarmChanged) {
+        mContext = context;
+        mOnAlarmChanged = onAlarmChanged;
+        mAlarmReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                refresh();
+            }
+        };
+    }
+
+    public void register() {
+        if (!mIsRegistered) {
+            mContext.registerReceiver(mAlarmReceiver, new IntentFilter(AlarmManager.ACTION_NEXT_ALARM_CLOCK_CHANGED));
+            mIsRegistered = true;
+            refresh();
+        }
+    }
+
+    public void unregister() {
+        if (mIsRegistered) {
+            mContext.unregisterReceiver(mAlarmReceiver);
+            mIsRegistered = false;
+        }
+    }
+
+    /**
+     * Reads the alarm again after the time or the time zone changed, as the angle of the marker depends on both.
+     */
+    public void onTimeChanged() {
+        if (mIsRegistered) {
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        long triggerTime = NO_ALARM;
+        try {
+            AlarmManager alarm = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+            AlarmManager.AlarmClockInfo nextAlarmClock = alarm == null ? null : alarm.getNextAlarmClock();
+            if (nextAlarmClock != null) {
+                triggerTime = nextAlarmClock.getTriggerTime();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading the next alarm", e);
+        }
+        // the angle depends on the zone, so it is computed again even for the same trigger time
+        if (triggerTime != NO_ALARM) {
+            ZonedDateTime alarmTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(triggerTime), ZoneId.systemDefault());
+            mDegreesFromNorth = alarmTime.getHour() * DEGREES_PER_HOUR + alarmTime.getMinute() * DEGREES_PER_MINUTE;
+        }
+        mTriggerTime = triggerTime;
+        mOnAlarmChanged.run();
+    }
+
+    /**
+     * @param now The current time in epoch milliseconds
+     * @return Whether there is an alarm within the display window
+     */
+    public boolean isShownAt(long now) {
+        return mTriggerTime != NO_ALARM && mTriggerTime - DISPLAY_WINDOW_MILLIS < now;
+    }
+
+    /**
+     * @return The trigger time of the next alarm in epoch milliseconds, {@link Long#MAX_VALUE} if there is none
+     */
+    public long getTriggerTime() {
+        return mTriggerTime;
+    }
+
+    /**
+     * @return The position of the alarm marker on the dial
+     */
+    public float getDegreesFromNorth() {
+        return mDegreesFromNorth;
+    }
+}
@@ -0,0 +1,127 @@
+package ch.heuscher.h24watchface;
+
+import static ch.heuscher.h24watchface.WatchFaceConstants.LOW_BATTERY_THRESHOLD;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+/**
+ * Keeps the battery level from the sticky {@link Intent#ACTION_BATTERY_CHANGED} broadcast, so the face does not
+ * ask the {@link BatteryManager} on every frame. A redraw is only requested when the low battery warning
+ * appears or disappears, or when the level shown in the warning changes.
+ *
+ * Besides the warning threshold of the face, the system's own low battery state
+ * ({@link Intent#ACTION_BATTERY_LOW} / {@link Intent#ACTION_BATTERY_OKAY}) is available to components
+ * that want to scale back their work.
+ */
+public class BatteryMonitor {
+
+    private static final int UNKNOWN = -1;
+
+    private final Context mContext;
+    private final Runnable mOnWarningChanged;
+    private final BroadcastReceiver mBatteryReceiver;
+    private boolean mIsRegistered = false;
+
+    // only touched on the main thread, where the broadcasts are delivered
+    private int mLevel = UNKNOWN;
+    private boolean mSystemLow = false;
+    private String mWarningText = null;
+
+    /**
+     * @param context The context to receive the battery broadcasts with
+     * @param onWarningChanged Called on the main thread when the low battery warning changes
+     */
+    public BatteryMonitor(Context context, Runnable onWarningChanged) {
+        mContext = context;
+        mOnWarningChanged = onWarningChanged;
+        mBatteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onBatteryIntent(intent);
+            }
+        };
+    }
+
+    public void register() {
+        if (!mIsRegistered) {
+            IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+            filter.addAction(Intent.ACTION_BATTERY_LOW);
+            filter.addAction(Intent.ACTION_BATTERY_OKAY);
+            // the battery broadcast is sticky, so the current state is returned right away
+            Intent sticky = mContext.registerReceiver(mBatteryReceiver, filter);
+            if (sticky != null) {
+                onBatteryIntent(sticky);
+            }
+            mIsRegistered = true;
+        }
+    }
+
+    public void unregister() {
+        if (mIsRegistered) {
+            mContext.unregisterReceiver(mBatteryReceiver);
+            mIsRegistered = false;
+        }
+    }
+
+    private void onBatteryIntent(Intent intent) {
+        String action = intent.getAction();
+        if (Intent.ACTION_BATTERY_LOW.equals(action)) {
+            mSystemLow = true;
+        } else if (Intent.ACTION_BATTERY_OKAY.equals(action)) {
+            mSystemLow = false;
+        } else {
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, UNKNOWN);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, UNKNOWN);
+            if (level >= 0 && scale > 0) {
+                setLevel(level * 100 / scale);
+            }
+        }
+    }
+
+    private void setLevel(int level) {
+        if (level == mLevel) {
+            return;
+        }
+        boolean wasLow = isLow();
+        mLevel = level;
+        if (isLow()) {
+            mWarningText = "Battery: " + level + "% !";
+            mOnWarningChanged.run();
+        } else if (wasLow) {
+            mWarningText = null;
+            mOnWarningChanged.run();
+        }
+    }
+
+    /**
+     * @return The battery level in percent, -1 if not known yet
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return Whether the level is at or below the warning threshold of the face
+     */
+    public boolean isLow() {
+        return mLevel != UNKNOWN && mLevel <= LOW_BATTERY_THRESHOLD;
+    }
+
+    /**
+     * @return Whether the system considers the battery low, between its BATTERY_LOW and BATTERY_OKAY broadcasts
+     */
+    public boolean isSystemLow() {
+        return mSystemLow;
+    }
+
+    /**
+     * @return The warning to show, or null if the level is above the threshold
+     */
+    public String getWarningText() {
+        return mWarningText;
+    }
+}
@@ -0,0 +1,84 @@
+package ch.heuscher.h24watchface;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+
+/**
+ * Keeps the screen brightness mode and level of the system settings, so the drawing code does not read them
+ * through the content resolver on every frame. A {@link ContentObserver} on both keys refreshes the values,
+ * which are published through volatile fields and can be read from any thread without locking.
+ */
+public class BrightnessSettings {
+
+    private static final int UNKNOWN = -1;
+
+    private final ContentResolver mContentResolver;
+    private final Runnable mOnChanged;
+    private final ContentObserver mObserver;
+    private boolean mIsRegistered = false;
+
+    private volatile int mBrightnessMode = Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL;
+    private volatile int mBrightness = UNKNOWN;
+
+    /**
+     * @param contentResolver The resolver to read and observe the settings with
+     * @param onChanged Called on the main thread when one of the values changed
+     */
+    public BrightnessSettings(ContentResolver contentResolver, Runnable onChanged) {
+        mContentResolver = contentResolver;
+        mOnChanged = onChanged;
+        mObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                if (refresh()) {
+                    mOnChanged.run();
+                }
+            }
+        };
+    }
+
+    public void register() {
+        if (!mIsRegistered) {
+            mContentResolver.registerContentObserver(Settings.System.getUriFor(Settings.System.SCREEN_BRIGHTNESS_MODE), false, mObserver);
+            mContentResolver.registerContentObserver(Settings.System.getUriFor(Settings.System.SCREEN_BRIGHTNESS), false, mObserver);
+            mIsRegistered = true;
+            refresh();
+        }
+    }
+
+    public void unregister() {
+        if (mIsRegistered) {
+            mContentResolver.unregisterContentObserver(mObserver);
+            mIsRegistered = false;
+        }
+    }
+
+    /**
+     * @return Whether one of the values changed
+     */
+    private boolean refresh() {
+        int brightnessMode = Settings.System.getInt(mContentResolver, Settings.System.SCREEN_BRIGHTNESS_MODE, Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL);
+        int brightness = Settings.System.getInt(mContentResolver, Settings.System.SCREEN_BRIGHTNESS, UNKNOWN);
+        boolean changed = brightnessMode != mBrightnessMode || brightness != mBrightness;
+        mBrightnessMode = brightnessMode;
+        mBrightness = brightness;
+        return changed;
+    }
+
+    /**
+     * @return Whether the system adapts the screen brightness automatically
+     */
+    public boolean isAutomatic() {
+        return mBrightnessMode == Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC;
+    }
+
+    /**
+     * @return The manual screen brightness (0-255), -1 if not known
+     */
+    public int getBrightness() {
+        return mBrightness;
+    }
+}
@@ -0,0 +1,154 @@
+package ch.heuscher.h24watchface;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-minute timeline of the next 24 hours as two 1440 bit rings indexed by epoch minute modulo 1440:
+ * one marking the minutes in which an event is running (busy) and one marking the minutes in which an event begins.
+ * It is built on the loader thread, starting at the minute the snapshot was loaded, and advanced incrementally
+ * with {@link #advance(long, CompactEventStore)} when the calendar window slides.
+ * The rings do not depend on the time zone, so a change of the UTC offset (e.g. daylight saving time) does not
+ * shift the carried over minutes. They only answer for times within 24 hours after the anchor.
+ */
+public final class BusyTimeline {
+
+    public static final int MINUTES_PER_DAY = 1440;
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final int WORDS = (MINUTES_PER_DAY + Long.SIZE - 1) / Long.SIZE;
+
+    public static final BusyTimeline EMPTY = new BusyTimeline(CompactEventStore.EMPTY, 0);
+
+    private final long[] mBusy;
+    private final long[] mBegins;
+    private final long mAnchorEpochMinute;
+
+    /**
+     * Builds the timeline, O(events + minutes). All-day events are ignored.
+     *
+     * @param events The events of the snapshot
+     * @param anchor The start of the timeline in epoch milliseconds, usually the load time of the snapshot
+     */
+    public BusyTimeline(CompactEventStore events, long anchor) {
+        this(new long[WORDS], new long[WORDS], anchor, events);
+    }
+
+    private BusyTimeline(long[] busy, long[] begins, long anchor, CompactEventStore events) {
+        mBusy = busy;
+        mBegins = begins;
+        mAnchorEpochMinute = Math.floorDiv(anchor, MILLIS_PER_MINUTE);
+        addEvents(events);
+    }
+
+    /**
+     * Creates a timeline starting at a later anchor: the minutes that passed since the old anchor are cleared
+     * (they would otherwise stand for the same minutes of the next day) and the added events are set.
+     * Events that ended before the new anchor need no removal, their minutes are all in the cleared part.
+     *
+     * @param anchor The new start of the timeline in epoch milliseconds, not before the current one
+     * @param addedEvents The events that were added to the snapshot
+     * @return The advanced timeline, this one is left unchanged
+     */
+    public BusyTimeline advance(long anchor, CompactEventStore addedEvents) {
+        long[] busy = mBusy.clone();
+        long[] begins = mBegins.clone();
+        long passedMinutes = Math.floorDiv(anchor, MILLIS_PER_MINUTE) - mAnchorEpochMinute;
+        int cleared = (int) Math.min(MINUTES_PER_DAY, Math.max(0, passedMinutes));
+        clearRing(busy, toBit(0), cleared);
+        clearRing(begins, toBit(0), cleared);
+        return new BusyTimeline(busy, begins, anchor, addedEvents);
+    }
+
+    private void addEvents(CompactEventStore events) {
+        for (int i = 0; i < events.size(); i++) {
+            if (events.isAllDay(i)) {
+                continue;
+            }
+            long beginOffset = Math.floorDiv(events.getBegin(i), MILLIS_PER_MINUTE) - mAnchorEpochMinute;
+            long endOffset = -Math.floorDiv(-events.getEnd(i), MILLIS_PER_MINUTE) - mAnchorEpochMinute;
+            if (beginOffset >= 0 && beginOffset < MINUTES_PER_DAY) {
+                setBit(mBegins, toBit((int) beginOffset));
+            }
+            int from = (int) Math.max(0, beginOffset);
+            int to = (int) Math.min(MINUTES_PER_DAY, endOffset);
+            if (from < to) {
+                setRing(mBusy, toBit(from), to - from);
+            }
+        }
+    }
+
+    /**
+     * @return Whether an event is running in the minute of the given time, false outside of the timeline
+     */
+    public boolean isBusy(long epochMillis) {
+        long offset = Math.floorDiv(epochMillis, MILLIS_PER_MINUTE) - mAnchorEpochMinute;
+        return offset >= 0 && offset < MINUTES_PER_DAY && getBit(mBusy, toBit((int) offset));
+    }
+
+    /**
+     * Scans the begin bits forward from a base time, e.g. the current minute.
+     * The offsets are counted in elapsed minutes from the anchor, like {@link #isBusy(long)},
+     * so they stay right when the UTC offset changed after the anchor was set.
+     *
+     * @param epochMillis The time the offsets are relative to, not before the anchor
+     * @param fromOffset The first offset in minutes to look at
+     * @return The smallest offset &gt;= fromOffset at which an event begins, or -1 if there is none until the end of the timeline
+     */
+    public int nextBeginOffset(long epochMillis, int fromOffset) {
+        long baseOffset = Math.floorDiv(epochMillis, MILLIS_PER_MINUTE) - mAnchorEpochMinute;
+        int end = (int) Math.max(0, Math.min(MINUTES_PER_DAY, MINUTES_PER_DAY - baseOffset));
+        int baseBit = (int) Math.floorMod(Math.floorDiv(epochMillis, MILLIS_PER_MINUTE), (long) MINUTES_PER_DAY);
+        for (int offset = fromOffset; offset < end; ) {
+            int bit = (baseBit + offset) % MINUTES_PER_DAY;
+            int word = bit / Long.SIZE;
+            long remaining = mBegins[word] >>> (bit % Long.SIZE);
+            if (remaining != 0) {
+                int found = offset + Long.numberOfTrailingZeros(remaining);
+                // bits beyond the end of the ring in the last word are never set, so a hit is in this ring pass
+                return found < end ? found : -1;
+            }
+            // continue at the start of the next word, or at bit 0 after the last bit of the ring
+            int nextBit = Math.min((word + 1) * Long.SIZE, MINUTES_PER_DAY);
+            offset += nextBit - bit;
+        }
+        return -1;
+    }
+
+    private int toBit(int offset) {
+        return (int) Math.floorMod(mAnchorEpochMinute + offset, (long) MINUTES_PER_DAY);
+    }
+
+    private static boolean getBit(long[] bits, int bit) {
+        return (bits[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) != 0;
+    }
+
+    private static void setBit(long[] bits, int bit) {
+        bits[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+    }
+
+    private static void setRing(long[] bits, int fromBit, int count) {
+        int firstPart = Math.min(count, MINUTES_PER_DAY - fromBit);
+        setRange(bits, fromBit, fromBit + firstPart, true);
+        setRange(bits, 0, count - firstPart, true);
+    }
+
+    private static void clearRing(long[] bits, int fromBit, int count) {
+        int firstPart = Math.min(count, MINUTES_PER_DAY - fromBit);
+        setRange(bits, fromBit, fromBit + firstPart, false);
+        setRange(bits, 0, count - firstPart, false);
+    }
+
+    private static void setRange(long[] bits, int fromBit, int toBit, boolean value) {
+        for (int bit = fromBit; bit < toBit; ) {
+            int word = bit / Long.SIZE;
+            int wordEnd = Math.min(toBit, (word + 1) * Long.SIZE);
+            int length = wordEnd - bit;
+            long mask = length == Long.SIZE ? -1L : ((1L << length) - 1) << (bit % Long.SIZE);
+            if (value) {
+                bits[word] |= mask;
+            } else {
+                bits[word] &= ~mask;
+            }
+            bit = wordEnd;
+        }
+    }
+}
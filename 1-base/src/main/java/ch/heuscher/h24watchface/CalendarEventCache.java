@@ -0,0 +1,216 @@
+package ch.heuscher.h24watchface;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.wearable.provider.WearableCalendarContract;
+import android.util.Log;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the last result of {@link CalendarEventProvider} so the calendar provider is not queried on every frame.
+ * Reloads run on a dedicated background thread and are published as an immutable {@link CalendarSnapshot},
+ * so callers on the draw thread never wait for the provider.
+ *
+ * The whole window is only loaded when a {@link ContentObserver} on the instances URI reports a change,
+ * or when the time, date or time zone changed, which the engine reports with {@link #invalidate()}. When the window merely slid past its edge
+ * (see {@link CalendarSnapshot#isValidAt(long)}), ended events are evicted and only the newly exposed
+ * slice at the far end of the window is queried.
+ */
+public class CalendarEventCache {
+
+    private static final String TAG = "CalendarEventCache";
+
+    private final Context mContext;
+    private final CalendarEventProvider mCalendarEventProvider;
+    private final long mQueryWindowMillis;
+    private final Runnable mOnSnapshotChanged;
+    private final Handler mMainHandler;
+    private final HandlerThread mLoaderThread;
+    private final Handler mLoaderHandler;
+    private final ContentObserver mObserver;
+    private final Runnable mFullLoadTask = this::loadFull;
+    private final Runnable mIncrementalLoadTask = this::loadIncremental;
+
+    private final AtomicReference<CalendarSnapshot> mSnapshot = new AtomicReference<>(CalendarSnapshot.EMPTY);
+    private final AtomicBoolean mLoadPending = new AtomicBoolean(false);
+    private volatile boolean mDirty = true;
+    private boolean mIsRegistered = false;
+
+    // each counter has a single writer: hits and misses the main thread, loads the loader thread
+    private volatile int mVersion = 0;
+    private volatile int mHits = 0;
+    private volatile int mMisses = 0;
+    private volatile int mFullLoads = 0;
+    private volatile int mIncrementalLoads = 0;
+
+    /**
+     * Creates a new CalendarEventCache and starts its loader thread.
+     *
+     * @param context The context to observe calendar changes with
+     * @param calendarEventProvider The provider used to (re)load the events
+     * @param queryWindowHours How many hours into the future to query
+     * @param onSnapshotChanged Called on the main thread whenever a new snapshot was published
+     */
+    public CalendarEventCache(Context context, CalendarEventProvider calendarEventProvider,
+                              long queryWindowHours, Runnable onSnapshotChanged) {
+        mContext = context;
+        mCalendarEventProvider = calendarEventProvider;
+        mQueryWindowMillis = TimeUnit.HOURS.toMillis(queryWindowHours);
+        mOnSnapshotChanged = onSnapshotChanged;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mLoaderThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mLoaderThread.start();
+        mLoaderHandler = new Handler(mLoaderThread.getLooper());
+        mObserver = new ContentObserver(mMainHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                invalidate();
+            }
+        };
+    }
+
+    public void register() {
+        if (!mIsRegistered) {
+            mContext.getContentResolver().registerContentObserver(WearableCalendarContract.Instances.CONTENT_URI, true, mObserver);
+            mIsRegistered = true;
+        }
+    }
+
+    public void unregister() {
+        if (mIsRegistered) {
+            mContext.getContentResolver().unregisterContentObserver(mObserver);
+            mIsRegistered = false;
+        }
+    }
+
+    /**
+     * Unregisters the observers and stops the loader thread. The cache must not be used afterwards.
+     */
+    public void release() {
+        unregister();
+        mLoaderHandler.removeCallbacks(mFullLoadTask);
+        mLoaderHandler.removeCallbacks(mIncrementalLoadTask);
+        mLoaderThread.quitSafely();
+    }
+
+    /**
+     * Reloads the whole window right away. A load that is still queued is replaced; the new snapshot
+     * requests a redraw once it is published. Must be called on the main thread.
+     */
+    public void invalidate() {
+        mDirty = false;
+        mLoadPending.set(true);
+        mLoaderHandler.removeCallbacks(mIncrementalLoadTask);
+        mLoaderHandler.removeCallbacks(mFullLoadTask);
+        mLoaderHandler.post(mFullLoadTask);
+    }
+
+    /**
+     * Returns the latest published snapshot and schedules a background reload if it is stale.
+     * Never blocks on the calendar provider.
+     *
+     * @param now The current time in epoch milliseconds
+     * @return The latest snapshot, never null
+     */
+    public CalendarSnapshot getSnapshot(long now) {
+        CalendarSnapshot snapshot = mSnapshot.get();
+        if (!mDirty && snapshot.isValidAt(now)) {
+            mHits++;
+            return snapshot;
+        }
+        if (mLoadPending.compareAndSet(false, true)) {
+            mMisses++;
+            boolean full = mDirty;
+            mDirty = false;
+            mLoaderHandler.post(full ? mFullLoadTask : mIncrementalLoadTask);
+        }
+        return snapshot;
+    }
+
+    private void loadFull() {
+        long now = System.currentTimeMillis();
+        long windowEnd = now + mQueryWindowMillis;
+        CalendarSnapshot snapshot;
+        try {
+            snapshot = CalendarSnapshot.of(mCalendarEventProvider.getCalendarEvents(now, windowEnd), now, windowEnd);
+        } catch (RuntimeException e) {
+            // e.g. missing calendar permission: show no events and retry with a full load after the refresh interval
+            Log.e(TAG, "Error loading calendar events", e);
+            snapshot = CalendarSnapshot.of(CompactEventStore.EMPTY, now, 0);
+        }
+        mFullLoads++;
+        publish(snapshot);
+    }
+
+    private void loadIncremental() {
+        CalendarSnapshot previous = mSnapshot.get();
+        CompactEventStore previousEvents = previous.getEvents();
+        if (previous.getWindowEnd() == 0 || !previousEvents.getZone().equals(ZoneId.systemDefault())) {
+            loadFull();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long windowEnd = now + mQueryWindowMillis;
+        CalendarSnapshot snapshot;
+        try {
+            CompactEventStore added = mCalendarEventProvider.getCalendarEventsBeginningAfter(previous.getWindowEnd(), windowEnd);
+            CompactEventStore.Builder events = new CompactEventStore.Builder(previousEvents.getZone());
+            for (int i = 0; i < previousEvents.size(); i++) {
+                if (previousEvents.getEnd(i) > now) {
+                    events.add(previousEvents, i);
+                }
+            }
+            for (int i = 0; i < added.size(); i++) {
+                events.add(added, i);
+            }
+            snapshot = CalendarSnapshot.of(events.build(), previous.getTimeline().advance(now, added), now, windowEnd);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error loading calendar events", e);
+            snapshot = CalendarSnapshot.of(CompactEventStore.EMPTY, now, 0);
+        }
+        mIncrementalLoads++;
+        publish(snapshot);
+    }
+
+    private void publish(CalendarSnapshot snapshot) {
+        mSnapshot.set(snapshot);
+        mVersion++;
+        mLoadPending.set(false);
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Published " + snapshot.getEvents().size() + " events (hits: " + mHits + ", misses: " + mMisses
+                    + ", full loads: " + mFullLoads + ", incremental loads: " + mIncrementalLoads + ")");
+        }
+        mMainHandler.post(mOnSnapshotChanged);
+    }
+
+    /**
+     * @return The number of snapshots published so far, changes with every new snapshot
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public int getHits() {
+        return mHits;
+    }
+
+    public int getMisses() {
+        return mMisses;
+    }
+
+    public int getFullLoads() {
+        return mFullLoads;
+    }
+
+    public int getIncrementalLoads() {
+        return mIncrementalLoads;
+    }
+}
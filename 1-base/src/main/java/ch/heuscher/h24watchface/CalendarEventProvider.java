@@ -3,24 +3,25 @@ package ch.heuscher.h24watchface;
 import static ch.heuscher.h24watchface.WatchFaceConstants.PROJECTION;
 
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.database.Cursor;
-import android.net.Uri;
 import android.provider.CalendarContract;
-import android.support.wearable.provider.WearableCalendarContract;
 
-import java.time.ZonedDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.ZoneId;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Provides calendar event data from the device's calendar provider.
- * Handles querying the Wearable Calendar API and converting results to CalendarEvent objects.
+ * Handles querying the Wearable Calendar API and converting results to a CompactEventStore.
  */
 public class CalendarEventProvider {
 
+    private static final long ALL_DAY_MIN_DURATION_MS = TimeUnit.HOURS.toMillis(24) - TimeUnit.MINUTES.toMillis(1);
+
     private final ContentResolver contentResolver;
+    private final CalendarQueryBuilder queryBuilder;
+    private final String selection;
+    private final String[] selectionArgs;
+    private final String sortOrder;
 
     /**
      * Creates a new CalendarEventProvider.
@@ -29,25 +30,57 @@ public class CalendarEventProvider {
      */
     public CalendarEventProvider(ContentResolver contentResolver) {
         this.contentResolver = contentResolver;
+        this.queryBuilder = newQueryBuilder();
+        this.selection = queryBuilder.getSelection();
+        this.selectionArgs = queryBuilder.getSelectionArgs();
+        this.sortOrder = queryBuilder.getSortOrder();
+    }
+
+    private static CalendarQueryBuilder newQueryBuilder() {
+        return new CalendarQueryBuilder()
+                .busyOnly()
+                .excludeAllDay()
+                .shorterThan(ALL_DAY_MIN_DURATION_MS)
+                .orderByBegin();
     }
 
     /**
-     * Queries upcoming calendar events within the specified time window.
-     * Only returns busy (non-available) events that are not all-day events.
+     * Queries calendar events within the specified time window.
+     * Only returns busy (non-available) events that are not all-day events, ordered by begin.
+     * Filtering and ordering are done by the provider, see {@link CalendarQueryBuilder}.
      *
-     * @param queryWindowHours How many hours into the future to query
-     * @return List of CalendarEvent objects, may be empty but never null
+     * The rows are written straight into a {@link CompactEventStore}, no per-event objects are created.
+     *
+     * @param begin Start of the window in epoch milliseconds
+     * @param end End of the window in epoch milliseconds
+     * @return The events, may be empty but never null
      */
-    public List<CalendarEvent> getCalendarEvents(long queryWindowHours) {
-        List<CalendarEvent> events = new ArrayList<>();
-        Uri.Builder builder = WearableCalendarContract.Instances.CONTENT_URI.buildUpon();
-        long begin = System.currentTimeMillis();
-        ContentUris.appendId(builder, begin);
-        long hourNoShow = TimeUnit.HOURS.toMillis(queryWindowHours);
-        ContentUris.appendId(builder, begin + hourNoShow);
-        final Cursor cursor = contentResolver.query(builder.build(), PROJECTION, null, null, null);
+    public CompactEventStore getCalendarEvents(long begin, long end) {
+        CompactEventStore.Builder events = new CompactEventStore.Builder(ZoneId.systemDefault());
+        query(events, begin, end, selection, selectionArgs, sortOrder);
+        return events.build();
+    }
+
+    /**
+     * Queries only the events beginning strictly after {@code after}, used to extend an already loaded window
+     * by the newly exposed slice without loading the events of the old window again.
+     *
+     * @param after End of the already loaded window in epoch milliseconds
+     * @param end End of the new window in epoch milliseconds
+     * @return The events of the slice, may be empty but never null
+     */
+    public CompactEventStore getCalendarEventsBeginningAfter(long after, long end) {
+        CompactEventStore.Builder events = new CompactEventStore.Builder(ZoneId.systemDefault());
+        CalendarQueryBuilder sliceQuery = newQueryBuilder().beginningAfter(after);
+        query(events, after, end, sliceQuery.getSelection(), sliceQuery.getSelectionArgs(), sliceQuery.getSortOrder());
+        return events.build();
+    }
+
+    private void query(CompactEventStore.Builder events, long begin, long end, String selection, String[] selectionArgs, String sortOrder) {
+        final Cursor cursor = contentResolver.query(queryBuilder.buildUri(begin, end),
+                PROJECTION, selection, selectionArgs, sortOrder);
         if (cursor == null) {
-            return events;
+            return;
         }
         try {
             while (cursor.moveToNext()) {
@@ -55,23 +88,16 @@ public class CalendarEventProvider {
                 long endVal = cursor.getLong(1);
                 String title = cursor.getString(2);
                 boolean isAllDay = !cursor.getString(3).equals("0")
-                        || endVal - beginVal >= TimeUnit.HOURS.toMillis(24) - TimeUnit.MINUTES.toMillis(1);
-                CalendarEvent newEvent = new CalendarEvent();
-                newEvent.setTitle(title);
-                ZonedDateTime beginTime = ZonedDateTime.ofInstant(java.time.Instant.ofEpochMilli(beginVal), java.time.ZoneId.systemDefault());
-                newEvent.setBegin(beginTime);
-                ZonedDateTime endTime = ZonedDateTime.ofInstant(java.time.Instant.ofEpochMilli(endVal), java.time.ZoneId.systemDefault());
-                newEvent.setEnd(endTime);
-                newEvent.setAllDay(isAllDay);
-                // todo: why does it not filter out non-available meetings?
+                        || endVal - beginVal >= ALL_DAY_MIN_DURATION_MS;
+                // the selection already filters these out, this only guards against providers ignoring it
                 boolean isBusy = cursor.getInt(4) == CalendarContract.Instances.AVAILABILITY_BUSY;
-                if (isBusy && !isAllDay) {
-                    events.add(newEvent);
+                if (!isBusy || isAllDay) {
+                    continue;
                 }
+                events.add(beginVal, endVal, title, 0);
             }
         } finally {
             cursor.close();
         }
-        return events;
     }
 }
@@ -0,0 +1,99 @@
+package ch.heuscher.h24watchface;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.support.wearable.provider.WearableCalendarContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the selection, selection arguments and sort order for a query on the wearable calendar instances,
+ * so filtering and sorting happen in the calendar provider instead of on the watch face side of the binder.
+ */
+public class CalendarQueryBuilder {
+
+    // selection arguments are bound as text, which SQLite does not convert for expressions without a column
+    // affinity like (end - begin): an integer is always less than a text there
+    private static final String ARG = "CAST(? AS INTEGER)";
+
+    private final StringBuilder mSelection = new StringBuilder();
+    private final List<String> mSelectionArgs = new ArrayList<>();
+    private String mSortOrder = null;
+
+    /**
+     * Only returns instances whose availability is busy.
+     */
+    public CalendarQueryBuilder busyOnly() {
+        return where(CalendarContract.Instances.AVAILABILITY + " = " + ARG, CalendarContract.Instances.AVAILABILITY_BUSY);
+    }
+
+    /**
+     * Only returns instances that are not flagged as all-day events.
+     */
+    public CalendarQueryBuilder excludeAllDay() {
+        return where(CalendarContract.Instances.ALL_DAY + " = " + ARG, 0);
+    }
+
+    /**
+     * Only returns instances that last strictly less than the given duration.
+     *
+     * @param durationMillis The exclusive maximum duration in milliseconds
+     */
+    public CalendarQueryBuilder shorterThan(long durationMillis) {
+        return where("(" + CalendarContract.Instances.END + " - " + CalendarContract.Instances.BEGIN + ") < " + ARG, durationMillis);
+    }
+
+    /**
+     * Only returns instances beginning strictly after the given time.
+     *
+     * @param epochMillis The exclusive lower bound of the begin in epoch milliseconds
+     */
+    public CalendarQueryBuilder beginningAfter(long epochMillis) {
+        return where(CalendarContract.Instances.BEGIN + " > " + ARG, epochMillis);
+    }
+
+    /**
+     * Orders the instances by their begin, earliest first.
+     */
+    public CalendarQueryBuilder orderByBegin() {
+        mSortOrder = CalendarContract.Instances.BEGIN + " ASC";
+        return this;
+    }
+
+    private CalendarQueryBuilder where(String condition, long arg) {
+        if (mSelection.length() > 0) {
+            mSelection.append(" AND ");
+        }
+        mSelection.append(condition);
+        mSelectionArgs.add(Long.toString(arg));
+        return this;
+    }
+
+    /**
+     * Builds the instances URI for the given time range.
+     *
+     * @param begin Start of the range in epoch milliseconds
+     * @param end End of the range in epoch milliseconds
+     * @return The URI to query
+     */
+    public Uri buildUri(long begin, long end) {
+        Uri.Builder builder = WearableCalendarContract.Instances.CONTENT_URI.buildUpon();
+        ContentUris.appendId(builder, begin);
+        ContentUris.appendId(builder, end);
+        return builder.build();
+    }
+
+    public String getSelection() {
+        return mSelection.length() == 0 ? null : mSelection.toString();
+    }
+
+    public String[] getSelectionArgs() {
+        return mSelectionArgs.isEmpty() ? null : mSelectionArgs.toArray(new String[0]);
+    }
+
+    public String getSortOrder() {
+        return mSortOrder;
+    }
+}
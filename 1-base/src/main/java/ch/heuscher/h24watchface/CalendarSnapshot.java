@@ -0,0 +1,89 @@
+package ch.heuscher.h24watchface;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable, already sorted set of calendar events as published by the background loader of {@link CalendarEventCache}.
+ * The draw thread only ever reads a snapshot, it never waits for the calendar provider.
+ */
+public final class CalendarSnapshot {
+
+    public static final CalendarSnapshot EMPTY = new CalendarSnapshot(CompactEventStore.EMPTY, BusyTimeline.EMPTY, 0, 0);
+
+    private final CompactEventStore mEvents;
+    private final EventIntervalIndex mIndex;
+    private final BusyTimeline mTimeline;
+    private final long mWindowEnd;
+    private final long mValidUntil;
+
+    private CalendarSnapshot(CompactEventStore events, BusyTimeline timeline, long windowEnd, long validUntil) {
+        mEvents = events;
+        mIndex = new EventIntervalIndex(events);
+        mTimeline = timeline;
+        mWindowEnd = windowEnd;
+        mValidUntil = validUntil;
+    }
+
+    /**
+     * Creates a snapshot from freshly loaded events.
+     *
+     * @param events The loaded events, ordered by begin
+     * @param loadedAt The time of the load in epoch milliseconds
+     * @param windowEnd The end of the loaded window in epoch milliseconds, 0 if nothing was loaded
+     * @return The new snapshot
+     */
+    public static CalendarSnapshot of(CompactEventStore events, long loadedAt, long windowEnd) {
+        return of(events, new BusyTimeline(events, loadedAt), loadedAt, windowEnd);
+    }
+
+    /**
+     * Creates a snapshot with a timeline that was advanced from the previous snapshot.
+     *
+     * @param events The events, ordered by begin
+     * @param timeline The timeline of the events, anchored at loadedAt
+     * @param loadedAt The time of the load in epoch milliseconds
+     * @param windowEnd The end of the loaded window in epoch milliseconds
+     * @return The new snapshot
+     */
+    public static CalendarSnapshot of(CompactEventStore events, BusyTimeline timeline, long loadedAt, long windowEnd) {
+        return new CalendarSnapshot(events, timeline, windowEnd, computeValidUntil(loadedAt, events));
+    }
+
+    /**
+     * The snapshot stays valid until the first event has ended (it must disappear from the face)
+     * or until the refresh interval has elapsed (new events may have entered the far end of the window).
+     */
+    private static long computeValidUntil(long loadedAt, CompactEventStore events) {
+        long validUntil = loadedAt + TimeUnit.MINUTES.toMillis(WatchFaceConstants.CALENDAR_REFRESH_INTERVAL_MINUTES);
+        for (int i = 0; i < events.size(); i++) {
+            long end = events.getEnd(i);
+            if (end > loadedAt) {
+                validUntil = Math.min(validUntil, end);
+            }
+        }
+        return validUntil;
+    }
+
+    public CompactEventStore getEvents() {
+        return mEvents;
+    }
+
+    public EventIntervalIndex getIndex() {
+        return mIndex;
+    }
+
+    public BusyTimeline getTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * @return The end of the loaded window in epoch milliseconds, 0 if nothing was loaded
+     */
+    public long getWindowEnd() {
+        return mWindowEnd;
+    }
+
+    public boolean isValidAt(long now) {
+        return now < mValidUntil;
+    }
+}
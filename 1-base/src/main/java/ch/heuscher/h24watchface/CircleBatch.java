@@ -0,0 +1,57 @@
+package ch.heuscher.h24watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * Gathers circles that are drawn with the same paint into one {@link Path}, so they are issued as a single
+ * draw call instead of one per circle. The path is rewound after drawing and keeps its storage,
+ * so a batch can be reused every frame without allocating.
+ *
+ * Filled circles of one batch must not overlap, where they do the winding of the path decides what is filled.
+ */
+public class CircleBatch {
+
+    private final Path mPath = new Path();
+    private int mCount = 0;
+
+    private int mCircles = 0;
+    private int mDraws = 0;
+
+    public void add(float x, float y, float radius) {
+        mPath.addCircle(x, y, radius, Path.Direction.CW);
+        mCount++;
+    }
+
+    /**
+     * Draws all gathered circles with one call and starts a new batch.
+     *
+     * @param canvas The canvas to draw on
+     * @param paint The paint of all circles of the batch
+     */
+    public void draw(Canvas canvas, Paint paint) {
+        if (mCount == 0) {
+            return;
+        }
+        canvas.drawPath(mPath, paint);
+        mPath.rewind();
+        mCircles += mCount;
+        mDraws++;
+        mCount = 0;
+    }
+
+    /**
+     * @return The number of circles drawn by this batch so far
+     */
+    public int getCircles() {
+        return mCircles;
+    }
+
+    /**
+     * @return The number of draw calls issued for them
+     */
+    public int getDraws() {
+        return mDraws;
+    }
+}
@@ -3,6 +3,8 @@ package ch.heuscher.h24watchface;
 import static ch.heuscher.h24watchface.WatchFaceConstants.COLORS;
 import static ch.heuscher.h24watchface.WatchFaceConstants.DARK_MODE_HUE;
 import static ch.heuscher.h24watchface.WatchFaceConstants.DARK_MODE_SATURATION;
+import static ch.heuscher.h24watchface.WatchFaceConstants.DIAL_STEPS;
+import static ch.heuscher.h24watchface.WatchFaceConstants.DIAL_STEPS_PER_DEGREE;
 
 import android.graphics.Color;
 import android.support.v4.graphics.ColorUtils;
@@ -15,21 +17,47 @@ import android.support.v4.graphics.ColorUtils;
  */
 public class ColorCalculator {
 
+    // the HSV value ends up as an 8 bit channel, finer steps of the light factor would not change the color
+    private static final int BRIGHTNESS_STEPS = 255;
+
+    private final int[] mColorsByStep = new int[DIAL_STEPS];
+    private final int[] mDarkModeHandColors = new int[BRIGHTNESS_STEPS + 1];
+
+    public ColorCalculator() {
+        float[] hsvVals = new float[3];
+        for (int step = 0; step < DIAL_STEPS; step++) {
+            mColorsByStep[step] = computeColorDegrees((float) step / DIAL_STEPS_PER_DEGREE, hsvVals);
+        }
+        float[] darkModeHsvVals = new float[]{DARK_MODE_HUE, DARK_MODE_SATURATION, 1};
+        for (int step = 0; step <= BRIGHTNESS_STEPS; step++) {
+            darkModeHsvVals[2] = (float) step / BRIGHTNESS_STEPS;
+            mDarkModeHandColors[step] = Color.HSVToColor(darkModeHsvVals);
+        }
+    }
+
     /**
      * Calculates the color for a given position on the 24-hour color wheel.
      * Colors are blended smoothly between the predefined color points.
+     * The colors are precomputed in quarter-degree steps (one per minute), so this is a table lookup.
      *
      * @param degreesFromNorth The angle in degrees (0-360) from north
      * @return The calculated RGB color with full luminance
      */
     public int getColorDegrees(float degreesFromNorth) {
+        int step = Math.floorMod((int) (degreesFromNorth * DIAL_STEPS_PER_DEGREE), DIAL_STEPS);
+        return mColorsByStep[step];
+    }
+
+    /**
+     * Computes the color of {@link #getColorDegrees(float)} without the table.
+     */
+    static int computeColorDegrees(float degreesFromNorth, float[] hsvVals) {
         degreesFromNorth = degreesFromNorth % 360;
         float relativeAdvance = degreesFromNorth / 360 * (COLORS.length);
         int firstColorIndex = (int) relativeAdvance;
         float amountFirstColor = relativeAdvance - firstColorIndex;
         int secondColorIndex = (firstColorIndex + 1) % (COLORS.length);
         int colorForTime = ColorUtils.blendARGB(COLORS[firstColorIndex], COLORS[secondColorIndex], amountFirstColor);
-        float[] hsvVals = new float[3];
         Color.colorToHSV(colorForTime, hsvVals);
         // full luminance
         hsvVals[2] = 1;
@@ -46,8 +74,8 @@ public class ColorCalculator {
     public int getHandPaintColor(boolean isDarkMode, float lightFactor) {
         if (isDarkMode) {
             // Ensure outline remains visible by maintaining minimum brightness of VERY_DARK threshold
-            float brightness = Math.max(lightFactor, DimmingController.VERY_DARK);
-            return Color.HSVToColor(new float[]{DARK_MODE_HUE, DARK_MODE_SATURATION, brightness});
+            float brightness = Math.min(1f, Math.max(lightFactor, DimmingController.VERY_DARK));
+            return mDarkModeHandColors[Math.round(brightness * BRIGHTNESS_STEPS)];
         } else {
             return Color.WHITE;
         }
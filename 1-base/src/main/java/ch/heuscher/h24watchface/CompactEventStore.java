@@ -0,0 +1,196 @@
+package ch.heuscher.h24watchface;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact, immutable store of calendar events kept as parallel primitive arrays (struct of arrays).
+ * Begin and end are epoch milliseconds, the local minute of day of the begin is precomputed for the dial markers,
+ * and titles are deduplicated into a title table referenced by index. All accessors are allocation free,
+ * so the drawing code can work with integer math only. Events are ordered by ascending begin.
+ */
+public final class CompactEventStore {
+
+    public static final int FLAG_ALL_DAY = 1;
+
+    public static final CompactEventStore EMPTY = new Builder(ZoneId.systemDefault()).build();
+
+    private final long[] mBegins;
+    private final long[] mEnds;
+    private final short[] mBeginMinuteOfDay;
+    private final int[] mFlags;
+    private final int[] mTitleIndex;
+    private final String[] mTitles;
+    private final ZoneId mZone;
+
+    private CompactEventStore(long[] begins, long[] ends, short[] beginMinuteOfDay, int[] flags, int[] titleIndex, String[] titles, ZoneId zone) {
+        mBegins = begins;
+        mEnds = ends;
+        mBeginMinuteOfDay = beginMinuteOfDay;
+        mFlags = flags;
+        mTitleIndex = titleIndex;
+        mTitles = titles;
+        mZone = zone;
+    }
+
+    public int size() {
+        return mBegins.length;
+    }
+
+    public boolean isEmpty() {
+        return mBegins.length == 0;
+    }
+
+    public long getBegin(int index) {
+        return mBegins[index];
+    }
+
+    public long getEnd(int index) {
+        return mEnds[index];
+    }
+
+    /**
+     * @return The minute of day (0-1439) of the begin of the event in the zone it was loaded in
+     */
+    public int getBeginMinuteOfDay(int index) {
+        return mBeginMinuteOfDay[index];
+    }
+
+    public int getFlags(int index) {
+        return mFlags[index];
+    }
+
+    public boolean isAllDay(int index) {
+        return (mFlags[index] & FLAG_ALL_DAY) != 0;
+    }
+
+    public String getTitle(int index) {
+        return mTitles[mTitleIndex[index]];
+    }
+
+    /**
+     * @return The zone the events were loaded in, see {@link #getBeginMinuteOfDay(int)}
+     */
+    public ZoneId getZone() {
+        return mZone;
+    }
+
+    /**
+     * Collects events row by row and builds an immutable {@link CompactEventStore} ordered by begin.
+     */
+    public static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final ZoneId mZone;
+        private final Map<String, Integer> mTitleIndices = new HashMap<>();
+        private final List<String> mTitles = new ArrayList<>();
+        private long[] mBegins = new long[INITIAL_CAPACITY];
+        private long[] mEnds = new long[INITIAL_CAPACITY];
+        private int[] mFlags = new int[INITIAL_CAPACITY];
+        private int[] mTitleIndex = new int[INITIAL_CAPACITY];
+        private int mSize = 0;
+        private boolean mSorted = true;
+
+        /**
+         * @param zone The zone used to compute the local minute of day of the event begins
+         */
+        public Builder(ZoneId zone) {
+            mZone = zone;
+        }
+
+        public Builder add(long begin, long end, String title, int flags) {
+            if (mSize == mBegins.length) {
+                int capacity = mSize * 2;
+                mBegins = Arrays.copyOf(mBegins, capacity);
+                mEnds = Arrays.copyOf(mEnds, capacity);
+                mFlags = Arrays.copyOf(mFlags, capacity);
+                mTitleIndex = Arrays.copyOf(mTitleIndex, capacity);
+            }
+            if (mSize > 0 && begin < mBegins[mSize - 1]) {
+                mSorted = false;
+            }
+            mBegins[mSize] = begin;
+            mEnds[mSize] = end;
+            mFlags[mSize] = flags;
+            mTitleIndex[mSize] = indexOfTitle(title);
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Copies the event at the given index of another store.
+         */
+        public Builder add(CompactEventStore events, int index) {
+            return add(events.getBegin(index), events.getEnd(index), events.getTitle(index), events.getFlags(index));
+        }
+
+        private int indexOfTitle(String title) {
+            Integer index = mTitleIndices.get(title);
+            if (index == null) {
+                index = mTitles.size();
+                mTitles.add(title);
+                mTitleIndices.put(title, index);
+            }
+            return index;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public CompactEventStore build() {
+            int[] order = sortedOrder();
+            long[] begins = new long[mSize];
+            long[] ends = new long[mSize];
+            short[] beginMinuteOfDay = new short[mSize];
+            int[] flags = new int[mSize];
+            int[] titleIndex = new int[mSize];
+            for (int i = 0; i < mSize; i++) {
+                int from = order == null ? i : order[i];
+                begins[i] = mBegins[from];
+                ends[i] = mEnds[from];
+                beginMinuteOfDay[i] = (short) minuteOfDay(mBegins[from], mZone);
+                flags[i] = mFlags[from];
+                titleIndex[i] = mTitleIndex[from];
+            }
+            return new CompactEventStore(begins, ends, beginMinuteOfDay, flags, titleIndex, mTitles.toArray(new String[0]), mZone);
+        }
+
+        /**
+         * The provider normally delivers the rows ordered by begin, so this only sorts (stable) if they are not.
+         *
+         * @return The source index for every target index, or null if already ordered
+         */
+        private int[] sortedOrder() {
+            if (mSorted) {
+                return null;
+            }
+            Integer[] boxedOrder = new Integer[mSize];
+            for (int i = 0; i < mSize; i++) {
+                boxedOrder[i] = i;
+            }
+            Arrays.sort(boxedOrder, (a, b) -> Long.compare(mBegins[a], mBegins[b]));
+            int[] order = new int[mSize];
+            for (int i = 0; i < mSize; i++) {
+                order[i] = boxedOrder[i];
+            }
+            return order;
+        }
+    }
+
+    /**
+     * @return The local minute of day (0-1439) of the given time in the given zone
+     */
+    static int minuteOfDay(long epochMillis, ZoneId zone) {
+        long offsetMillis = TimeUnit.SECONDS.toMillis(zone.getRules().getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds());
+        long localMillis = epochMillis + offsetMillis;
+        return (int) TimeUnit.MILLISECONDS.toMinutes(Math.floorMod(localMillis, TimeUnit.DAYS.toMillis(1)));
+    }
+}
@@ -0,0 +1,85 @@
+package ch.heuscher.h24watchface;
+
+import static ch.heuscher.h24watchface.WatchFaceConstants.DIAL_STEPS;
+import static ch.heuscher.h24watchface.WatchFaceConstants.DIAL_STEPS_PER_DEGREE;
+
+/**
+ * Polar coordinates of the dial without trigonometry per call: the unit vectors of all directions are
+ * precomputed at quarter-degree resolution, which is one step per minute of the 24-hour dial, so every
+ * hour, minute, event and alarm position is exact. Positions on rings that are used by many primitives
+ * (e.g. the hour markers) are additionally cached per surface size, see {@link #ring(float)}.
+ *
+ * Directions are given in degrees clockwise from north, like a canvas rotation around the center.
+ */
+public class DialGeometry {
+
+    private static final float[] UNIT_X = new float[DIAL_STEPS];
+    private static final float[] UNIT_Y = new float[DIAL_STEPS];
+
+    static {
+        for (int step = 0; step < DIAL_STEPS; step++) {
+            double radians = Math.toRadians((double) step / DIAL_STEPS_PER_DEGREE);
+            UNIT_X[step] = (float) Math.sin(radians);
+            UNIT_Y[step] = (float) -Math.cos(radians);
+        }
+    }
+
+    /**
+     * The positions of all directions at a fixed distance from the center.
+     */
+    public static final class Ring {
+        private final float[] mX = new float[DIAL_STEPS];
+        private final float[] mY = new float[DIAL_STEPS];
+
+        private Ring(float centerX, float centerY, float radius) {
+            for (int step = 0; step < DIAL_STEPS; step++) {
+                mX[step] = centerX + radius * UNIT_X[step];
+                mY[step] = centerY + radius * UNIT_Y[step];
+            }
+        }
+
+        public float getX(float degreesFromNorth) {
+            return mX[step(degreesFromNorth)];
+        }
+
+        public float getY(float degreesFromNorth) {
+            return mY[step(degreesFromNorth)];
+        }
+    }
+
+    private float mCenterX;
+    private float mCenterY;
+
+    public void onSurfaceChanged(float centerX, float centerY) {
+        mCenterX = centerX;
+        mCenterY = centerY;
+    }
+
+    /**
+     * Precomputes the positions on a ring, to be called again when the surface changes.
+     *
+     * @param radius The distance from the center
+     * @return The ring
+     */
+    public Ring ring(float radius) {
+        return new Ring(mCenterX, mCenterY, radius);
+    }
+
+    /**
+     * @return The x coordinate of the point in the given direction and distance from the center
+     */
+    public float getX(float degreesFromNorth, float distanceFromCenter) {
+        return mCenterX + distanceFromCenter * UNIT_X[step(degreesFromNorth)];
+    }
+
+    /**
+     * @return The y coordinate of the point in the given direction and distance from the center
+     */
+    public float getY(float degreesFromNorth, float distanceFromCenter) {
+        return mCenterY + distanceFromCenter * UNIT_Y[step(degreesFromNorth)];
+    }
+
+    private static int step(float degreesFromNorth) {
+        return Math.floorMod(Math.round(degreesFromNorth * DIAL_STEPS_PER_DEGREE), DIAL_STEPS);
+    }
+}
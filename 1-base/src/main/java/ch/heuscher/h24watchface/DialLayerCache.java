@@ -0,0 +1,91 @@
+package ch.heuscher.h24watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+/**
+ * Offscreen layer for the static part of the dial (hour markers and numbers), which only changes with the
+ * display modes and the light level, not from minute to minute. The layer is rendered once into a {@link Bitmap}
+ * and blitted with a single call until its key changes.
+ *
+ * The key is built by the caller from everything the layer depends on, see {@link #key}. The size is handled by
+ * {@link #onSurfaceChanged(int, int)}. The rotation is not part of the key, as the layer is blitted into the
+ * already rotated canvas.
+ */
+public class DialLayerCache {
+
+    private static final int DARK_MODE = 1;
+    private static final int MINIMAL_MODE = 1 << 1;
+    private static final int ACTIVE = 1 << 2;
+    private static final int SPECIALS_PRESENT = 1 << 3;
+    private static final int VERY_DARK = 1 << 4;
+    private static final int NO_KEY = -1;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private long mKey = NO_KEY;
+
+    private int mRenders = 0;
+    private int mBlits = 0;
+
+    /**
+     * Builds the key of the layer content.
+     *
+     * @param isDarkMode Whether dark mode is enabled
+     * @param isMinimalMode Whether minimal mode is enabled
+     * @param active Whether the colored markers and numbers are shown (neither ambient nor dark mode)
+     * @param specialsPresent Whether status indicators take the place of the 24h marker
+     * @param isVeryDark Whether the light level is below {@link DimmingController#VERY_DARK}
+     * @param handPaintColor The color of the hand paint, it carries the (quantized) light level in dark mode
+     * @return The key
+     */
+    public static long key(boolean isDarkMode, boolean isMinimalMode, boolean active, boolean specialsPresent,
+                           boolean isVeryDark, int handPaintColor) {
+        int flags = (isDarkMode ? DARK_MODE : 0)
+                | (isMinimalMode ? MINIMAL_MODE : 0)
+                | (active ? ACTIVE : 0)
+                | (specialsPresent ? SPECIALS_PRESENT : 0)
+                | (isVeryDark ? VERY_DARK : 0);
+        return ((long) handPaintColor << 32) | flags;
+    }
+
+    public void onSurfaceChanged(int width, int height) {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+        }
+        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mKey = NO_KEY;
+    }
+
+    public boolean isValid(long key) {
+        return mBitmap != null && mKey == key;
+    }
+
+    /**
+     * Clears the layer and returns the canvas to render its new content into.
+     *
+     * @param key The key of the content that will be rendered
+     * @return The canvas of the layer
+     */
+    public Canvas beginRender(long key) {
+        mBitmap.eraseColor(Color.TRANSPARENT);
+        mKey = key;
+        mRenders++;
+        return mCanvas;
+    }
+
+    public void draw(Canvas canvas) {
+        canvas.drawBitmap(mBitmap, 0, 0, null);
+        mBlits++;
+    }
+
+    public int getRenders() {
+        return mRenders;
+    }
+
+    public int getBlits() {
+        return mBlits;
+    }
+}
@@ -5,32 +5,75 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.SystemClock;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class DimmingController implements SensorEventListener {
+/**
+ * Derives the light factor of the face from the ambient light sensor.
+ *
+ * The raw lux values are smoothed with an exponential moving average, and the light factor only follows the
+ * smoothed value when it left a hysteresis band around the current factor, so flickering light does not cause
+ * a redraw per sample. As the light sensor only reports changes, the average keeps moving towards the last raw
+ * value while no sample comes: {@link #update()} evaluates the decay in closed form for the elapsed time,
+ * so no timer has to wake up the CPU, and the face catches up with a step into darkness at its next frame.
+ * While the face is idle (ambient), the sensor is registered with a maximum report latency,
+ * so the sensor hub batches the samples instead of waking up the CPU for each of them.
+ * Wakeups and redraw requests are counted for the hourly statistics of the engine.
+ *
+ * The sensor callback publishes lux and light factor together as the float bits of one {@link AtomicLong},
+ * so the draw thread always reads a consistent pair without locks or boxing.
+ */
+public class DimmingController implements SensorEventListener, SensorWatchdog.Watched {
     public static final float VERY_DARK = 0.3f;
     public static final float DEFAULT_MIN_LUMINANCE = 0.072f;
     public static final float BOOST_MINIMUM_LUX = 100f;
+
+    // weight of a new sample in the moving average of the lux values
+    public static final float DEFAULT_LUX_SMOOTHING = 0.3f;
+    // the light factor does not follow changes smaller than this
+    public static final float DEFAULT_DIMM_HYSTERESIS = 0.02f;
+    // bands around the boost thresholds, to enter above threshold + band and leave below threshold - band
+    public static final float DEFAULT_BOOST_DIMM_BAND = 0.01f;
+    public static final float DEFAULT_BOOST_LUX_BAND = 10f;
+    private static final float REDRAW_DIMM_CHANGE = 0.4f;
+    private static final float BOOST_DIMM_CHANGE = 0.05f;
+    private static final int IDLE_MAX_REPORT_LATENCY_US = (int) TimeUnit.SECONDS.toMicros(10);
+    // samples arriving closer together than this were delivered by the same wakeup (a batch)
+    private static final long SAME_WAKEUP_MILLIS = 100;
+    // the lux smoothing is the weight of a sample, and the decay towards the last sample per this interval
+    private static final double CONVERGE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
     private final MyWatchFaceService.Engine mEngine;
     private final SensorManager mSensorManager;
     private final Sensor mLight;
     private boolean mIsRegistered = false;
-    private long mLastSensorChangeTime = 0;
+    private boolean mIdle = false;
+    private long mLastSampleTime = 0;
+    private long mRegisteredAt = 0;
 
-    private float mLux = 100f;
-    private Float mNextDimm = 1f;
-    private Float mLastDimm = 1f;
+    // lux in the upper, next dimm factor in the lower 32 bits
+    private final AtomicLong mLightState = new AtomicLong(pack(100f, 1f));
+    private boolean mHasSample = false;
+    private float mRawLux = 100f;
+    private long mFilteredAt = 0;
+    private volatile float mLastDimm = 1f;
     private float mMinLuminance = DEFAULT_MIN_LUMINANCE;
+    private boolean mBoosting = false;
+
+    private float mLuxSmoothing = DEFAULT_LUX_SMOOTHING;
+    private float mDimmHysteresis = DEFAULT_DIMM_HYSTERESIS;
+    private float mBoostDimmBand = DEFAULT_BOOST_DIMM_BAND;
+    private float mBoostLuxBand = DEFAULT_BOOST_LUX_BAND;
+
+    private long mStatsSince = SystemClock.elapsedRealtime();
+    private long mLastDelivery = 0;
+    private int mWakeups = 0;
+    private int mRedraws = 0;
 
     public float getLux() {
-        // Check if long time no upgrade, but should --> re-register
-        if (mIsRegistered &&
-                System.currentTimeMillis() - mLastSensorChangeTime > TimeUnit.SECONDS.toMillis(65)) {
-            selfUnregister();
-            selfRegister();
-        }
-        return mLux;
+        return Float.intBitsToFloat((int) (mLightState.get() >>> 32));
     }
 
     public DimmingController(MyWatchFaceService.Engine engine, Context context, SensorManager sensorManager) {
@@ -49,23 +92,80 @@ public class DimmingController implements SensorEventListener {
     public final void onSensorChanged(SensorEvent event) {
         if (event.sensor.getType() != Sensor.TYPE_LIGHT)
             return;
-        mLastSensorChangeTime = System.currentTimeMillis();
+        long now = SystemClock.elapsedRealtime();
+        countDelivery(now);
         // The light sensor returns a single value.
-        mLux = event.values[0];
-        setNextDimm(computeLightFactor(mLux));
-
+        float lux = event.values[0];
+        float filteredLux = mHasSample ? decayedLux(now) : lux;
+        mRawLux = lux;
+        mHasSample = true;
+        filter(filteredLux + mLuxSmoothing * (lux - filteredLux), now);
         if (needsRedraw()){
-            mEngine.invalidate();
+            mRedraws++;
+            mEngine.requestRedraw();
+        }
+    }
+
+    /**
+     * Moves the average towards the last sample for the time that passed since the last sample or update,
+     * to be called before a frame reads {@link #getNextDimm()}.
+     */
+    public void update() {
+        if (mIsRegistered && mHasSample) {
+            long now = SystemClock.elapsedRealtime();
+            filter(decayedLux(now), now);
+        }
+    }
+
+    private float decayedLux(long now) {
+        float filteredLux = getLux();
+        if (filteredLux == mRawLux) {
+            return filteredLux;
         }
+        double decay = Math.pow(1 - mLuxSmoothing, (now - mFilteredAt) / CONVERGE_INTERVAL_MILLIS);
+        return (float) (mRawLux + (filteredLux - mRawLux) * decay);
+    }
+
+    private void filter(float filteredLux, long now) {
+        float nextDimm = getNextDimm();
+        float lux = mRawLux;
+        float lightFactor = computeLightFactor(filteredLux);
+        float targetFactor = computeLightFactor(lux);
+        boolean converged = Math.abs(lightFactor - targetFactor) < mDimmHysteresis;
+        if (converged) {
+            // close enough, settle on the raw value instead of creeping towards it
+            filteredLux = lux;
+            lightFactor = targetFactor;
+        }
+        if (converged ? lightFactor != nextDimm : Math.abs(lightFactor - nextDimm) >= mDimmHysteresis) {
+            nextDimm = lightFactor;
+        }
+        // only the main thread writes, the sensor callback and the frames
+        mLightState.set(pack(filteredLux, nextDimm));
+        mFilteredAt = now;
+    }
+
+    private void countDelivery(long now) {
+        mLastSampleTime = now;
+        if (now - mLastDelivery > SAME_WAKEUP_MILLIS) {
+            mWakeups++;
+        }
+        mLastDelivery = now;
     }
 
     public boolean needsRedraw() {
         return System.currentTimeMillis() > mEngine.getLastDraw() + 500
-                && getDimmChange() >= 0.4;
+                && getDimmChange() >= REDRAW_DIMM_CHANGE;
     }
 
     public boolean needsBoost() {
-        return getDimmChange() >= 0.05f && getLux() > BOOST_MINIMUM_LUX;
+        float lux = getLux();
+        if (mBoosting) {
+            mBoosting = getDimmChange() >= BOOST_DIMM_CHANGE - mBoostDimmBand && lux > BOOST_MINIMUM_LUX - mBoostLuxBand;
+        } else {
+            mBoosting = getDimmChange() >= BOOST_DIMM_CHANGE + mBoostDimmBand && lux > BOOST_MINIMUM_LUX + mBoostLuxBand;
+        }
+        return mBoosting;
     }
 
     private float getDimmChange() {
@@ -86,8 +186,14 @@ public class DimmingController implements SensorEventListener {
 
     protected void selfRegister() {
         if (!mIsRegistered) {
-            mSensorManager.registerListener(this, mLight, SensorManager.SENSOR_DELAY_NORMAL);
+            if (mIdle) {
+                // batched in the sensor hub, delivered at the latest after the latency
+                mSensorManager.registerListener(this, mLight, SensorManager.SENSOR_DELAY_NORMAL, IDLE_MAX_REPORT_LATENCY_US);
+            } else {
+                mSensorManager.registerListener(this, mLight, SensorManager.SENSOR_DELAY_NORMAL);
+            }
             mIsRegistered = true;
+            mRegisteredAt = SystemClock.elapsedRealtime();
         }
     }
 
@@ -98,19 +204,95 @@ public class DimmingController implements SensorEventListener {
         }
     }
 
-    public Float getNextDimm() {
-        return mNextDimm;
+    @Override
+    public boolean isRegistered() {
+        return mIsRegistered;
+    }
+
+    @Override
+    public long getLastSampleTime() {
+        return mLastSampleTime;
+    }
+
+    @Override
+    public long getRegisteredAt() {
+        return mRegisteredAt;
+    }
+
+    @Override
+    public void rearm() {
+        selfUnregister();
+        selfRegister();
+    }
+
+    /**
+     * Switches between immediate and batched delivery of the light samples.
+     *
+     * @param idle Whether the face is idle (ambient), so samples may be batched
+     */
+    public void setIdle(boolean idle) {
+        if (mIdle != idle) {
+            mIdle = idle;
+            if (mIsRegistered) {
+                selfUnregister();
+                selfRegister();
+            }
+        }
+    }
+
+    /**
+     * Configures the filtering of the light samples.
+     *
+     * @param luxSmoothing Weight of a new sample in the moving average (0-1, 1 = no smoothing)
+     * @param dimmHysteresis Smallest change of the light factor that is followed
+     * @param boostDimmBand Band around the dimm change threshold of {@link #needsBoost()}
+     * @param boostLuxBand Band around {@link #BOOST_MINIMUM_LUX}
+     */
+    public void setFiltering(float luxSmoothing, float dimmHysteresis, float boostDimmBand, float boostLuxBand) {
+        mLuxSmoothing = luxSmoothing;
+        mDimmHysteresis = dimmHysteresis;
+        mBoostDimmBand = boostDimmBand;
+        mBoostLuxBand = boostLuxBand;
+    }
+
+    /**
+     * @return The sensor deliveries per hour since the start or the last {@link #resetStats()}, batches count once
+     */
+    public float getWakeupsPerHour() {
+        return perHour(mWakeups);
+    }
+
+    /**
+     * @return The redraws requested by the light sensor per hour
+     */
+    public float getRedrawsPerHour() {
+        return perHour(mRedraws);
+    }
+
+    public void resetStats() {
+        mStatsSince = SystemClock.elapsedRealtime();
+        mWakeups = 0;
+        mRedraws = 0;
+    }
+
+    private float perHour(int count) {
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - mStatsSince);
+        return count * (float) TimeUnit.HOURS.toMillis(1) / elapsed;
+    }
+
+    public float getNextDimm() {
+        return Float.intBitsToFloat((int) mLightState.get());
     }
 
-    public void setNextDimm(Float mNextDimm) {
-        this.mNextDimm = mNextDimm;
+    private static long pack(float lux, float nextDimm) {
+        return ((long) Float.floatToRawIntBits(lux) << 32) | (Float.floatToRawIntBits(nextDimm) & 0xFFFFFFFFL);
     }
 
-    public Float getLastDimm() {
+    public float getLastDimm() {
         return mLastDimm;
     }
 
-    public void setLastDimm(Float mLastDimm) {
+    public void setLastDimm(float mLastDimm) {
         this.mLastDimm = mLastDimm;
     }
 
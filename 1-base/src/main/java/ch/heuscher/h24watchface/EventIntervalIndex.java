@@ -0,0 +1,83 @@
+package ch.heuscher.h24watchface;
+
+/**
+ * Interval index over a {@link CompactEventStore}, answering the time range questions of the drawing code
+ * with binary searches instead of scanning every event on every frame.
+ * The events keep the order of the store (by ascending begin), so the returned
+ * index ranges can be iterated directly. For "currently running" lookups a running maximum of the end times
+ * is kept, which is monotonic and can therefore be binary searched as well.
+ */
+public final class EventIntervalIndex {
+
+    public static final EventIntervalIndex EMPTY = new EventIntervalIndex(CompactEventStore.EMPTY);
+
+    private final CompactEventStore mEvents;
+    private final long[] mMaxEndUpTo;
+
+    /**
+     * Builds the index, O(n). Meant to be called on the loader thread together with the store.
+     *
+     * @param events The events, ordered by begin
+     */
+    public EventIntervalIndex(CompactEventStore events) {
+        mEvents = events;
+        mMaxEndUpTo = new long[events.size()];
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < events.size(); i++) {
+            maxEnd = Math.max(maxEnd, events.getEnd(i));
+            mMaxEndUpTo[i] = maxEnd;
+        }
+    }
+
+    public CompactEventStore getEvents() {
+        return mEvents;
+    }
+
+    /**
+     * @return The index of the first event beginning strictly after the given time, or size() if there is none
+     */
+    public int firstBeginAfter(long time) {
+        int low = 0;
+        int high = mEvents.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mEvents.getBegin(mid) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The index of the first event beginning at or after the given time, or size() if there is none
+     */
+    public int firstBeginAtOrAfter(long time) {
+        return firstBeginAfter(time - 1);
+    }
+
+    /**
+     * All events running at the given time lie in [firstPossiblyRunningAt(time), firstBeginAfter(time)).
+     * Events in that range that already ended must be skipped with {@link #isRunningAt(int, long)}.
+     *
+     * @return The index of the first event that may still be running at the given time
+     */
+    public int firstPossiblyRunningAt(long time) {
+        int low = 0;
+        int high = mMaxEndUpTo.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mMaxEndUpTo[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public boolean isRunningAt(int index, long time) {
+        return mEvents.getBegin(index) <= time && mEvents.getEnd(index) > time;
+    }
+}
@@ -0,0 +1,95 @@
+package ch.heuscher.h24watchface;
+
+import static ch.heuscher.h24watchface.WatchFaceConstants.EVENT_TITLE_MAX_LENGTH;
+import static ch.heuscher.h24watchface.WatchFaceConstants.EVENT_TITLE_MAX_LENGTH_LINE_1;
+
+import java.util.Objects;
+
+/**
+ * Small fixed cache of the text lines of announced calendar events, e.g. "12 Meeting" or "-5 Meeting".
+ * The lines only change once per minute, so they are built on the first lookup of a minute and reused by
+ * all following frames. There is a slot for every line the drawer can show, so all announced events of a minute
+ * fit; when more are looked up anyway, the oldest slot is replaced first.
+ */
+public class EventTitleLines {
+
+    private static final String NO_TITLE = "(ohne Titel)";
+
+    private String[] mTitles;
+    private long[] mMinutes;
+    private boolean[] mRunning;
+    private String[] mFirstLines;
+    private String[] mSecondLines;
+    private int mNextSlot = 0;
+
+    /**
+     * @param slots The number of events that can be cached, at least 1
+     */
+    public EventTitleLines(int slots) {
+        setSlots(slots);
+    }
+
+    /**
+     * Resizes the cache, e.g. when the number of lines the drawer can show changed. Clears it if the size changed.
+     *
+     * @param slots The number of events that can be cached, at least 1
+     */
+    public void setSlots(int slots) {
+        int size = Math.max(1, slots);
+        if (mFirstLines != null && mFirstLines.length == size) {
+            return;
+        }
+        mTitles = new String[size];
+        mMinutes = new long[size];
+        mRunning = new boolean[size];
+        mFirstLines = new String[size];
+        mSecondLines = new String[size];
+        mNextSlot = 0;
+    }
+
+    public int getSlots() {
+        return mFirstLines.length;
+    }
+
+    /**
+     * Looks up the lines of an event, building them if they are not cached.
+     *
+     * @param title The title of the event, may be null or blank
+     * @param minutes The minutes until the begin, or until the end for a running event
+     * @param running Whether the event is already running
+     * @return The slot to read the lines from with {@link #getFirstLine(int)} and {@link #getSecondLine(int)}
+     */
+    public int lookup(String title, long minutes, boolean running) {
+        int slots = mFirstLines.length;
+        for (int slot = 0; slot < slots; slot++) {
+            if (mFirstLines[slot] != null && mMinutes[slot] == minutes && mRunning[slot] == running
+                    && Objects.equals(mTitles[slot], title)) {
+                return slot;
+            }
+        }
+        int slot = mNextSlot;
+        mNextSlot = (mNextSlot + 1) % slots;
+
+        String shownTitle = title == null || title.trim().length() == 0 ? NO_TITLE : title;
+        String eventHrTitle = (running ? "-" : "") + minutes + " " + shownTitle;
+        int minimizedLength = Math.min(EVENT_TITLE_MAX_LENGTH_LINE_1, eventHrTitle.length());
+        mTitles[slot] = title;
+        mMinutes[slot] = minutes;
+        mRunning[slot] = running;
+        mFirstLines[slot] = eventHrTitle.substring(0, minimizedLength);
+        mSecondLines[slot] = eventHrTitle.length() > minimizedLength ?
+                eventHrTitle.substring(minimizedLength, Math.min(EVENT_TITLE_MAX_LENGTH, eventHrTitle.length())) : null;
+        return slot;
+    }
+
+    public String getFirstLine(int slot) {
+        return mFirstLines[slot];
+    }
+
+    /**
+     * @return The continuation of a long title, or null if it fits on the first line
+     */
+    public String getSecondLine(int slot) {
+        return mSecondLines[slot];
+    }
+}
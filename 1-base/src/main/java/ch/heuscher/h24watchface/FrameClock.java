@@ -0,0 +1,55 @@
+package ch.heuscher.h24watchface;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Time source of the frames. The exact time is kept as epoch milliseconds, while the {@link ZonedDateTime}
+ * the drawing code reads hour, minute and date from is only recreated when the minute (or the zone) changes,
+ * so a frame within the same minute does not allocate.
+ */
+public class FrameClock {
+
+    private long mNow;
+    private ZonedDateTime mMinute;
+    private long mMinuteStart = Long.MAX_VALUE;
+    private long mNextMinuteStart = Long.MIN_VALUE;
+
+    /**
+     * Advances the clock to the given time.
+     *
+     * @param now The current time in epoch milliseconds
+     */
+    public void update(long now) {
+        mNow = now;
+        if (now < mMinuteStart || now >= mNextMinuteStart) {
+            mMinute = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault()).truncatedTo(ChronoUnit.MINUTES);
+            mMinuteStart = mMinute.toInstant().toEpochMilli();
+            mNextMinuteStart = mMinute.plusMinutes(1).toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * Forces the next update to recreate the minute, e.g. after the time zone changed.
+     */
+    public void reset() {
+        mMinuteStart = Long.MAX_VALUE;
+        mNextMinuteStart = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return The time of the current frame in epoch milliseconds
+     */
+    public long getNow() {
+        return mNow;
+    }
+
+    /**
+     * @return The current minute in the system zone, seconds and below are truncated
+     */
+    public ZonedDateTime getZonedDateTime() {
+        return mMinute;
+    }
+}
@@ -0,0 +1,42 @@
+package ch.heuscher.h24watchface;
+
+/**
+ * Compact hash over everything a frame shows: the minute, the display modes, the quantized light level,
+ * the status indicators, the calendar snapshot, the step counters and the countdown.
+ * Two frames with the same fingerprint look the same, so a redraw request for an unchanged fingerprint
+ * can be dropped. The engine counts the skipped and the rendered frames.
+ *
+ * The inputs are added with {@link #add(long)} after a {@link #reset()}, nothing is allocated.
+ */
+public class FrameFingerprint {
+
+    // a value that no frame has, for "nothing presented yet"
+    public static final long NONE = 0;
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER = 0xBF58476D1CE4E5B9L;
+
+    private long mHash = SEED;
+
+    public FrameFingerprint reset() {
+        mHash = SEED;
+        return this;
+    }
+
+    public FrameFingerprint add(long value) {
+        mHash = (mHash ^ value) * MULTIPLIER;
+        mHash ^= mHash >>> 31;
+        return this;
+    }
+
+    public FrameFingerprint add(boolean value) {
+        return add(value ? 1 : 0);
+    }
+
+    /**
+     * @return The fingerprint of the added inputs, never {@link #NONE}
+     */
+    public long get() {
+        return mHash == NONE ? 1 : mHash;
+    }
+}
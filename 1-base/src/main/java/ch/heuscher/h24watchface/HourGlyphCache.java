@@ -0,0 +1,116 @@
+package ch.heuscher.h24watchface;
+
+import static ch.heuscher.h24watchface.WatchFaceConstants.HOUR_TEXTS;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * Caches the outline of the full-screen hour number as a {@link Path} per hour value and text style,
+ * so the big glyphs are shaped only once instead of twice per frame. The same path is drawn filled and stroked,
+ * only color and alpha are applied per frame.
+ *
+ * Entries are keyed by typeface, text size and letter spacing of the paint. The dark mode switches between
+ * a few typefaces, so a small number of styles is kept; the oldest one is replaced when a new style comes in.
+ */
+public class HourGlyphCache {
+
+    private static final int HOURS = 24;
+    private static final int MAX_STYLES = 3;
+
+    /**
+     * The outline of one hour number at its final position on the face.
+     */
+    public static final class Glyph {
+        private final Path mPath;
+        private final int mHeight;
+
+        private Glyph(Path path, int height) {
+            mPath = path;
+            mHeight = height;
+        }
+
+        public Path getPath() {
+            return mPath;
+        }
+
+        /**
+         * @return The height of the text bounds, as given by {@link Paint#getTextBounds}
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+    }
+
+    private static final class Style {
+        private Typeface mTypeface;
+        private float mTextSize;
+        private float mLetterSpacing;
+        private final Glyph[] mGlyphs = new Glyph[HOURS];
+
+        private boolean matches(Paint paint) {
+            return mTypeface == paint.getTypeface()
+                    && mTextSize == paint.getTextSize()
+                    && mLetterSpacing == paint.getLetterSpacing();
+        }
+    }
+
+    private final Style[] mStyles = new Style[MAX_STYLES];
+    private final Rect mBounds = new Rect();
+    private int mNextStyle = 0;
+    private float mCenterX;
+    private float mBaselineY;
+
+    /**
+     * Sets the position of the glyphs and drops all cached ones.
+     *
+     * @param centerX The horizontal center of the text
+     * @param baselineY The baseline of the text
+     */
+    public void setPosition(float centerX, float baselineY) {
+        mCenterX = centerX;
+        mBaselineY = baselineY;
+        for (int i = 0; i < MAX_STYLES; i++) {
+            mStyles[i] = null;
+        }
+    }
+
+    /**
+     * Returns the glyph for the given hour in the style of the given paint, shaping it on first use.
+     *
+     * @param hour The hour (0-23)
+     * @param paint The paint with typeface, text size and letter spacing to use
+     * @return The cached glyph
+     */
+    public Glyph get(int hour, Paint paint) {
+        Style style = styleOf(paint);
+        Glyph glyph = style.mGlyphs[hour];
+        if (glyph == null) {
+            String text = HOUR_TEXTS[hour];
+            Path path = new Path();
+            float x = mCenterX - paint.measureText(text) / 2;
+            paint.getTextPath(text, 0, text.length(), x, mBaselineY, path);
+            paint.getTextBounds(text, 0, text.length(), mBounds);
+            glyph = new Glyph(path, mBounds.height());
+            style.mGlyphs[hour] = glyph;
+        }
+        return glyph;
+    }
+
+    private Style styleOf(Paint paint) {
+        for (Style style : mStyles) {
+            if (style != null && style.matches(paint)) {
+                return style;
+            }
+        }
+        Style style = new Style();
+        style.mTypeface = paint.getTypeface();
+        style.mTextSize = paint.getTextSize();
+        style.mLetterSpacing = paint.getLetterSpacing();
+        mStyles[mNextStyle] = style;
+        mNextStyle = (mNextStyle + 1) % MAX_STYLES;
+        return style;
+    }
+}
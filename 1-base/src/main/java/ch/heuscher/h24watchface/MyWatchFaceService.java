@@ -20,9 +20,12 @@ import static ch.heuscher.h24watchface.WatchFaceConstants.COMPLICATION_ID;
 import static ch.heuscher.h24watchface.WatchFaceConstants.PROJECTION;
 import static ch.heuscher.h24watchface.WatchFaceConstants.ROTATION_180_DEGREES;
 
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentUris;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.Cursor;
 import android.graphics.Canvas;
 import android.graphics.Rect;
@@ -32,6 +35,7 @@ import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.Uri;
 import android.net.wifi.WifiManager;
+import android.os.SystemClock;
 import android.provider.CalendarContract;
 import android.provider.Settings;
 import android.support.wearable.complications.ComplicationData;
@@ -45,7 +49,6 @@ import android.view.SurfaceHolder;
 import java.time.LocalTime;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -53,18 +56,45 @@ import java.util.concurrent.TimeUnit;
  */
 public class MyWatchFaceService extends CanvasWatchFaceService {
 
+    private static final String TAG = "Heuscher24h";
+    private static final long STATS_LOG_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
-    public class Engine extends CanvasWatchFaceService.Engine {
-
-        private ZonedDateTime mZonedDateTime;
+    public class Engine extends CanvasWatchFaceService.Engine implements WatchFaceDrawer.Face {
+
+        private final FrameClock mFrameClock = new FrameClock();
+        private final FrameFingerprint mFingerprint = new FrameFingerprint();
+        private long mPresentedFingerprint = FrameFingerprint.NONE;
+        private int mSkippedFrames = 0;
+        private int mRenderedFrames = 0;
+        // inputs written by other threads, captured once per frame so the frame and its fingerprint agree
+        private CalendarSnapshot mFrameSnapshot = CalendarSnapshot.EMPTY;
+        private int mFrameCalendarVersion = 0;
+        private float mFrameNextDimm = 1f;
+        private int mFrameSteps = 0;
+        private int mFrameStepsToday = 0;
+        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                // the one receiver for time changes, passed on to all that depend on the time or the zone
+                mFrameClock.reset();
+                mCalendarEventCache.invalidate();
+                mAlarmMonitor.onTimeChanged();
+                forceRedraw();
+            }
+        };
         private WatchFaceDrawer mWatchFaceDrawer;
         private StepCounterManager mStepCounterManager;
-        private CalendarEventProvider mCalendarEventProvider;
+        private CalendarEventCache mCalendarEventCache;
         private SystemStatusProvider mSystemStatusProvider;
+        private BatteryMonitor mBatteryMonitor;
+        private AlarmMonitor mAlarmMonitor;
+        private BrightnessSettings mBrightnessSettings;
+        private final SensorWatchdog mSensorWatchdog = new SensorWatchdog();
 
         private boolean mAmbient;
         private boolean mDarkMode = true;
@@ -77,8 +107,10 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         private LocalTime mLastCountdownTime;
 
         private String mDebug = null;
+        private long mStatsLoggedAt = SystemClock.elapsedRealtime();
 
 
+        @Override
         public boolean isAmbient() {
             return mAmbient;
         }
@@ -87,6 +119,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             this.mAmbient = mAmbient;
         }
 
+        @Override
         public boolean isDarkMode() {
             return mDarkMode;
         }
@@ -109,18 +142,36 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
                     setHideStatusBar(true).build());
 
             SensorManager sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-            mStepCounterManager = new StepCounterManager(sensorManager);
+            mStepCounterManager = new StepCounterManager(getBaseContext(), sensorManager, this::requestRedraw);
 
             mDimmingController = new DimmingController(
                     this,
                     getBaseContext(),
                     sensorManager);
             setDarkMode(true);
-
-            mZonedDateTime = ZonedDateTime.now();
-            mWatchFaceDrawer = new WatchFaceDrawer(getBaseContext());
-            mCalendarEventProvider = new CalendarEventProvider(getContentResolver());
-            mSystemStatusProvider = new SystemStatusProvider(getBaseContext());
+            // the light sensor may also stop after delivering, a steady light is re-checked every 15 minutes
+            mSensorWatchdog.watch("light", mDimmingController, TimeUnit.SECONDS.toMillis(65), TimeUnit.MINUTES.toMillis(15));
+            // the first sample of the step counter may wait for the batch latency, a silence just means no steps
+            mSensorWatchdog.watch("steps", mStepCounterManager, TimeUnit.MINUTES.toMillis(15), SensorWatchdog.NO_SILENCE_TIMEOUT);
+
+            mFrameClock.update(System.currentTimeMillis());
+            mWatchFaceDrawer = new WatchFaceDrawer();
+            mCalendarEventCache = new CalendarEventCache(getBaseContext(),
+                    new CalendarEventProvider(getContentResolver()), WatchFaceConstants.CALENDAR_QUERY_WINDOW_HOURS,
+                    this::requestRedraw);
+            mCalendarEventCache.register();
+            mSystemStatusProvider = new SystemStatusProvider(getBaseContext(), this::requestRedraw);
+            mSystemStatusProvider.register();
+            mBatteryMonitor = new BatteryMonitor(getBaseContext(), this::requestRedraw);
+            mBatteryMonitor.register();
+            mAlarmMonitor = new AlarmMonitor(getBaseContext(), this::requestRedraw);
+            mAlarmMonitor.register();
+            mBrightnessSettings = new BrightnessSettings(getContentResolver(), this::requestRedraw);
+            mBrightnessSettings.register();
+            IntentFilter timeZoneFilter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            timeZoneFilter.addAction(Intent.ACTION_TIME_CHANGED);
+            timeZoneFilter.addAction(Intent.ACTION_DATE_CHANGED);
+            registerReceiver(mTimeZoneReceiver, timeZoneFilter);
 
             setDefaultComplicationProvider(COMPLICATION_ID, new ComponentName("com.google.android.deskclock",
                             "com.google.android.deskclock.complications.TimerProviderService"),
@@ -130,8 +181,15 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDestroy() {
+            mSensorWatchdog.stop();
             mDimmingController.selfUnregister();
-            mStepCounterManager.unregister();
+            mStepCounterManager.release();
+            mCalendarEventCache.release();
+            mSystemStatusProvider.unregister();
+            mBatteryMonitor.unregister();
+            mAlarmMonitor.unregister();
+            mBrightnessSettings.unregister();
+            unregisterReceiver(mTimeZoneReceiver);
             super.onDestroy();
         }
 
@@ -167,8 +225,31 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            requestRedraw();
+            logStatsHourly();
+        }
 
+        /**
+         * Logs the counters of the face and its monitors once an hour, to check their effect on a device.
+         */
+        private void logStatsHourly() {
+            long elapsedRealtime = SystemClock.elapsedRealtime();
+            if (elapsedRealtime - mStatsLoggedAt < STATS_LOG_INTERVAL_MILLIS) {
+                return;
+            }
+            mStatsLoggedAt = elapsedRealtime;
+            Log.i(TAG, "Light sensor wakeups per hour: " + mDimmingController.getWakeupsPerHour()
+                    + ", redraws per hour: " + mDimmingController.getRedrawsPerHour());
+            mDimmingController.resetStats();
+            Log.i(TAG, "Sensor stalls light: " + mSensorWatchdog.getStalls("light")
+                    + " (last recovery " + mSensorWatchdog.getLastRecoveryLatency("light") + " ms), steps: "
+                    + mSensorWatchdog.getStalls("steps")
+                    + " (last recovery " + mSensorWatchdog.getLastRecoveryLatency("steps") + " ms)");
+            Log.i(TAG, "Frames rendered: " + mRenderedFrames + ", skipped: " + mSkippedFrames
+                    + ", calendar hits: " + mCalendarEventCache.getHits() + ", misses: " + mCalendarEventCache.getMisses()
+                    + ", full loads: " + mCalendarEventCache.getFullLoads()
+                    + ", incremental loads: " + mCalendarEventCache.getIncrementalLoads());
+            Log.i(TAG, "Battery level: " + mBatteryMonitor.getLevel() + "%, system low: " + mBatteryMonitor.isSystemLow());
         }
 
         @Override
@@ -176,6 +257,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (isAmbient() != inAmbientMode) {
                 setAmbient(inAmbientMode);
+                mDimmingController.setIdle(inAmbientMode);
                 invalidate();
             }
         }
@@ -184,6 +266,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
             mWatchFaceDrawer.onSurfaceChanged(width, height);
+            forceRedraw();
         }
 
         @Override
@@ -218,7 +301,7 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
                     break;
 
                 case WatchFaceService.TAP_TYPE_TOUCH_CANCEL:
-                    invalidate();
+                    requestRedraw();
                     break;
 
                 case WatchFaceService.TAP_TYPE_TOUCH:
@@ -231,10 +314,63 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            mZonedDateTime = ZonedDateTime.now();
-            mWatchFaceDrawer.onDraw(canvas, this, mZonedDateTime, mDimmingController);
+            long now = System.currentTimeMillis();
+            mFrameClock.update(now);
+            // the version first: a snapshot published in between is then drawn with the older version, never the reverse
+            mFrameCalendarVersion = mCalendarEventCache.getVersion();
+            mFrameSnapshot = mCalendarEventCache.getSnapshot(now);
+            mDimmingController.update();
+            mFrameNextDimm = mDimmingController.getNextDimm();
+            mFrameSteps = mStepCounterManager.getSteps();
+            mFrameStepsToday = mStepCounterManager.getStepsToday();
+            mPresentedFingerprint = computeFingerprint(now, mFrameCalendarVersion, mFrameNextDimm, mFrameSteps, mFrameStepsToday);
+            mWatchFaceDrawer.onDraw(canvas, this, mFrameClock.getZonedDateTime(), now);
+            mRenderedFrames++;
         }
 
+        /**
+         * Redraws the face unless the frame would look the same as the one presented last,
+         * to be used by the sources that may fire without a visible change.
+         */
+        public void requestRedraw() {
+            if (mPresentedFingerprint != FrameFingerprint.NONE
+                    && computeFingerprint(System.currentTimeMillis(), mCalendarEventCache.getVersion(),
+                    mDimmingController.getNextDimm(), mStepCounterManager.getSteps(),
+                    mStepCounterManager.getStepsToday()) == mPresentedFingerprint) {
+                mSkippedFrames++;
+                return;
+            }
+            invalidate();
+        }
+
+        /**
+         * Redraws the face in any case, e.g. after the surface or the time zone changed.
+         */
+        private void forceRedraw() {
+            mPresentedFingerprint = FrameFingerprint.NONE;
+            invalidate();
+        }
+
+        private long computeFingerprint(long now, int calendarVersion, float nextDimm, int steps, int stepsToday) {
+            boolean stepsShown = !mAmbient && !mMinimalMode;
+            return mFingerprint.reset()
+                    .add(TimeUnit.MILLISECONDS.toMinutes(now))
+                    .add(mAmbient).add(mDarkMode).add(mMinimalMode).add(mShowMinutesDateAndMeetings)
+                    .add(Float.floatToIntBits(mRotate))
+                    .add(mBrightnessSettings.isAutomatic())
+                    // the resolution of the hand color, see ColorCalculator
+                    .add(Math.round(nextDimm * 255))
+                    .add(getSpecials().hashCode())
+                    .add(calendarVersion)
+                    // the steps are not drawn in ambient and minimal mode
+                    .add(stepsShown ? steps : 0).add(stepsShown ? stepsToday : 0)
+                    .add(mBatteryMonitor.isLow() ? mBatteryMonitor.getLevel() : -1)
+                    .add(mAlarmMonitor.isShownAt(now)).add(Float.floatToIntBits(mAlarmMonitor.getDegreesFromNorth()))
+                    .add(WatchFaceDrawer.countdownKey(getCountdownRemainingMillis(now)))
+                    .get();
+        }
+
+        @Override
         public String getSpecials() {
             return mSystemStatusProvider.getSystemStatus(mDebug, getUnreadCount(), getInterruptionFilter());
         }
@@ -245,40 +381,70 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
 
             if (visible) {
                 mStepCounterManager.register();
-                invalidate();
+                mSensorWatchdog.start();
+                forceRedraw();
             } else {
+                mSensorWatchdog.stop();
                 mStepCounterManager.unregister();
             }
         }
 
         public long getLastDraw() {
-            return mZonedDateTime.toInstant().toEpochMilli();
+            return mFrameClock.getNow();
+        }
+
+        /**
+         * @return The calendar snapshot of the current frame
+         */
+        @Override
+        public CalendarSnapshot getCalendarSnapshot() {
+            return mFrameSnapshot;
         }
 
-        public List<CalendarEvent> getCalendarEvents() {
-            return mCalendarEventProvider.getCalendarEvents(WatchFaceConstants.CALENDAR_QUERY_WINDOW_HOURS);
+        /**
+         * @return The light factor of the current frame, see {@link DimmingController#getNextDimm()}
+         */
+        @Override
+        public float getNextDimm() {
+            return mFrameNextDimm;
         }
 
+        @Override
         public ZonedDateTime getZonedDateTime() {
-            return mZonedDateTime;
+            return mFrameClock.getZonedDateTime();
+        }
+
+        @Override
+        public float getMinLuminance() {
+            return mDimmingController.getMinLuminance();
+        }
+
+        @Override
+        public void setLastDimm(float lastDimm) {
+            mDimmingController.setLastDimm(lastDimm);
         }
 
+        @Override
         public int getSteps() {
-            return mStepCounterManager.getSteps();
+            return mFrameSteps;
         }
 
+        @Override
         public int getStepsToday() {
-            return mStepCounterManager.getStepsToday();
+            return mFrameStepsToday;
         }
 
+        @Override
         public boolean isMinimalMode() {
             return mMinimalMode;
         }
 
+        @Override
         public boolean isShowMinutesDateAndMeetings() {
             return mShowMinutesDateAndMeetings;
         }
 
+        @Override
         public LocalTime getLastCountdownTime() {
             return mLastCountdownTime;
         }
@@ -287,14 +453,38 @@ public class MyWatchFaceService extends CanvasWatchFaceService {
             return mLastReadCountdownTime;
         }
 
-        public String getDebug() {
-            return mDebug;
+        /**
+         * @param now The current time in epoch milliseconds
+         * @return The remaining time of the countdown in milliseconds, negative if there is none or it has run out
+         */
+        @Override
+        public long getCountdownRemainingMillis(long now) {
+            if (mLastCountdownTime == null) {
+                return -1;
+            }
+            return mLastCountdownTime.toSecondOfDay() * 1000L - (now - mLastReadCountdownTime);
         }
 
+        @Override
         public float getRotate() {
             return mRotate;
         }
 
+        @Override
+        public BatteryMonitor getBatteryMonitor() {
+            return mBatteryMonitor;
+        }
+
+        @Override
+        public AlarmMonitor getAlarmMonitor() {
+            return mAlarmMonitor;
+        }
+
+        @Override
+        public BrightnessSettings getBrightnessSettings() {
+            return mBrightnessSettings;
+        }
+
         public DimmingController getDimmingController() {
             return mDimmingController;
         }
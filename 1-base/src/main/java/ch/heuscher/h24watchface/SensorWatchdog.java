@@ -0,0 +1,160 @@
+package ch.heuscher.h24watchface;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks on its own {@link Handler} schedule whether registered sensor listeners received a sample since
+ * their registration, and re-arms (unregisters and registers again) the ones that did not, as some sensors
+ * stop delivering. The watched sensors report on change only, but the current value is delivered on
+ * registration, so a registration that stays without any sample is a stall.
+ *
+ * A silence after a first sample may be a steady value or a sensor that stopped after delivering once.
+ * Listeners watched with a silence timeout are therefore re-armed as well when they stayed silent that long
+ * since their last sample or re-arming. That re-arming is not a stall by itself: the sensor answers it with
+ * the current value, and only when it does not, the check above counts the stall. The silence timeout is
+ * kept well above the stall timeout, so a steady value costs a re-registration only now and then.
+ * For every watched listener the number of stalls and the latency from re-arming to the next sample are recorded.
+ *
+ * All methods and the checks run on the main thread, where the sensor samples are delivered as well.
+ */
+public class SensorWatchdog {
+
+    private static final long CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long NOT_REARMED = -1;
+    public static final long NO_SILENCE_TIMEOUT = 0;
+
+    /**
+     * A sensor listener that can be watched.
+     */
+    public interface Watched {
+        boolean isRegistered();
+
+        /**
+         * @return The {@link SystemClock#elapsedRealtime()} of the last sample, 0 if there was none
+         */
+        long getLastSampleTime();
+
+        /**
+         * @return The {@link SystemClock#elapsedRealtime()} of the last registration
+         */
+        long getRegisteredAt();
+
+        /**
+         * Unregisters and registers the listener again.
+         */
+        void rearm();
+    }
+
+    private static final class Entry {
+        private final String mName;
+        private final Watched mWatched;
+        private final long mStallTimeoutMillis;
+        private final long mSilenceTimeoutMillis;
+        private long mRearmedAt = NOT_REARMED;
+        private int mStalls = 0;
+        private long mLastRecoveryLatency = 0;
+
+        private Entry(String name, Watched watched, long stallTimeoutMillis, long silenceTimeoutMillis) {
+            mName = name;
+            mWatched = watched;
+            mStallTimeoutMillis = stallTimeoutMillis;
+            mSilenceTimeoutMillis = silenceTimeoutMillis;
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Entry> mEntries = new ArrayList<>();
+    private final Runnable mCheckTask = this::check;
+    private boolean mIsRunning = false;
+
+    /**
+     * Adds a listener to watch.
+     *
+     * @param name The name used in the log and to query the statistics
+     * @param watched The listener
+     * @param stallTimeoutMillis How long the listener may go without a first sample after its registration
+     *                           before it is re-armed
+     * @param silenceTimeoutMillis How long the listener may stay silent after a sample or re-arming before it is
+     *                             re-armed, {@link #NO_SILENCE_TIMEOUT} to only check for the first sample
+     */
+    public void watch(String name, Watched watched, long stallTimeoutMillis, long silenceTimeoutMillis) {
+        mEntries.add(new Entry(name, watched, stallTimeoutMillis, silenceTimeoutMillis));
+    }
+
+    public void start() {
+        if (!mIsRunning) {
+            mIsRunning = true;
+            mHandler.postDelayed(mCheckTask, CHECK_INTERVAL_MILLIS);
+        }
+    }
+
+    public void stop() {
+        if (mIsRunning) {
+            mIsRunning = false;
+            mHandler.removeCallbacks(mCheckTask);
+        }
+    }
+
+    private void check() {
+        long now = SystemClock.elapsedRealtime();
+        for (Entry entry : mEntries) {
+            Watched watched = entry.mWatched;
+            if (!watched.isRegistered()) {
+                entry.mRearmedAt = NOT_REARMED;
+                continue;
+            }
+            long lastSample = watched.getLastSampleTime();
+            if (entry.mRearmedAt != NOT_REARMED && lastSample >= entry.mRearmedAt) {
+                entry.mLastRecoveryLatency = lastSample - entry.mRearmedAt;
+                entry.mRearmedAt = NOT_REARMED;
+            }
+            long registeredAt = watched.getRegisteredAt();
+            if (lastSample < registeredAt) {
+                if (now - registeredAt > entry.mStallTimeoutMillis) {
+                    entry.mStalls++;
+                    entry.mRearmedAt = now;
+                    watched.rearm();
+                }
+            } else if (entry.mSilenceTimeoutMillis != NO_SILENCE_TIMEOUT
+                    && now - lastSample > entry.mSilenceTimeoutMillis) {
+                // the re-registration resets the silence, a missing answer to it is counted as a stall above
+                entry.mRearmedAt = now;
+                watched.rearm();
+            }
+        }
+        if (mIsRunning) {
+            mHandler.postDelayed(mCheckTask, CHECK_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * @return How often the listener with the given name was re-armed, 0 if it is not watched
+     */
+    public int getStalls(String name) {
+        Entry entry = find(name);
+        return entry == null ? 0 : entry.mStalls;
+    }
+
+    /**
+     * @return The time from the last re-arming of the listener to its next sample in milliseconds
+     */
+    public long getLastRecoveryLatency(String name) {
+        Entry entry = find(name);
+        return entry == null ? 0 : entry.mLastRecoveryLatency;
+    }
+
+    private Entry find(String name) {
+        for (Entry entry : mEntries) {
+            if (entry.mName.equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
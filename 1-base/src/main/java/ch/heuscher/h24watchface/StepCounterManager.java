@@ -1,31 +1,123 @@
 package ch.heuscher.h24watchface;
 
+import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 
-import java.time.LocalDateTime;
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class StepCounterManager implements SensorEventListener {
+/**
+ * Follows the step counter sensor. The total steps since reboot and the count at midnight are published
+ * together in one {@link AtomicLong}, so readers on other threads always see a consistent pair.
+ *
+ * The count at midnight and an hourly history are kept in a {@link StepHistory}, so the steps of the day
+ * are known right after a restart of the watch face. If the counter went back, the device rebooted and the
+ * steps walked before the reboot are carried over into the new baseline. The history file is opened and
+ * forced to storage on a background thread; samples arriving before it is open are dropped, and the sensor is
+ * registered again once it is open.
+ *
+ * As the face shows the steps per minute only, the samples are batched in the sensor FIFO (if the sensor has one)
+ * for up to a minute. The samples of a batch are placed in time by their event timestamps and a clock offset
+ * taken at the start of each batch. Changes are reported through the change callback at most once a minute,
+ * at the start of the next minute.
+ */
+public class StepCounterManager implements SensorEventListener, SensorWatchdog.Watched {
+
+    private static final String TAG = "StepCounterManager";
+    private static final String HISTORY_FILE = "step_history";
+    // aligned with the minute tick, the face does not show the steps more often
+    private static final int MAX_REPORT_LATENCY_US = (int) TimeUnit.MINUTES.toMicros(1);
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long MILLIS_PER_HOUR = TimeUnit.HOURS.toMillis(1);
 
     private final SensorManager mSensorManager;
     private final Sensor mStepCounter;
+    private final Runnable mOnStepsChanged;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread mIoThread;
+    private final Handler mIoHandler;
+    private final Runnable mFlushTask = this::flushHistory;
+    // null until opened on the I/O thread, then only used on the main thread (apart from flushing)
+    private StepHistory mHistory;
+    private boolean mReleased = false;
+    private final Runnable mBatchDoneTask = this::onBatchDone;
+    private final Runnable mNotifyTask = this::notifyStepsChanged;
+    private boolean mBatchDonePosted = false;
+    private boolean mBatchChangedSteps = false;
+    private boolean mNotifyPosted = false;
+    // local wall clock minus elapsed realtime, both in milliseconds
+    private long mLocalClockOffset;
 
-    private int mSteps = 0;
-    private int mStepsAtMidnight = 0;
-    private LocalDateTime lastStepDateTime = LocalDateTime.now();
+    // steps in the upper, steps at midnight in the lower 32 bits
+    private final AtomicLong mStepState = new AtomicLong(0);
+    private long mLastEpochDay = StepHistory.NO_DAY;
     private boolean mIsRegistered = false;
+    private long mLastSampleTime = 0;
+    private long mRegisteredAt = 0;
 
-    public StepCounterManager(SensorManager sensorManager) {
+    /**
+     * @param context The context to keep the step history in
+     * @param sensorManager The sensor manager to register with
+     * @param onStepsChanged Called on the main thread at the start of a minute in which the steps changed
+     */
+    public StepCounterManager(Context context, SensorManager sensorManager, Runnable onStepsChanged) {
         mSensorManager = sensorManager;
+        mOnStepsChanged = onStepsChanged;
         mStepCounter = mSensorManager.getDefaultSensor(Sensor.TYPE_STEP_COUNTER);
+        mIoThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mIoThread.start();
+        mIoHandler = new Handler(mIoThread.getLooper());
+        File file = new File(context.getFilesDir(), HISTORY_FILE);
+        mIoHandler.post(() -> {
+            StepHistory history = new StepHistory(file);
+            mHandler.post(() -> onHistoryOpened(history));
+        });
+    }
+
+    private void onHistoryOpened(StepHistory history) {
+        if (mReleased) {
+            return;
+        }
+        mHistory = history;
+        // continue from the persisted state, the first sample decides about a new day or a reboot
+        mLastEpochDay = history.getBaselineEpochDay();
+        if (mLastEpochDay == LocalDate.now().toEpochDay()) {
+            mStepState.set(pack(history.getLastSteps(), history.getStepsAtMidnight()));
+        } else if (mLastEpochDay != StepHistory.NO_DAY) {
+            // no steps today yet
+            mStepState.set(pack(history.getLastSteps(), history.getLastSteps()));
+        }
+        if (mIsRegistered) {
+            // the samples until now were dropped, registering again delivers the current value
+            rearm();
+        }
+        mOnStepsChanged.run();
     }
 
     public void register() {
         if (!mIsRegistered && mStepCounter != null) {
-            mSensorManager.registerListener(this, mStepCounter, SensorManager.SENSOR_DELAY_NORMAL);
+            updateLocalClockOffset();
+            if (mStepCounter.getFifoMaxEventCount() > 0) {
+                mSensorManager.registerListener(this, mStepCounter, SensorManager.SENSOR_DELAY_NORMAL, MAX_REPORT_LATENCY_US);
+                // deliver what is in the FIFO now, the face just became visible
+                mSensorManager.flush(this);
+            } else {
+                mSensorManager.registerListener(this, mStepCounter, SensorManager.SENSOR_DELAY_NORMAL);
+            }
             mIsRegistered = true;
+            mRegisteredAt = SystemClock.elapsedRealtime();
         }
     }
 
@@ -34,30 +126,153 @@ public class StepCounterManager implements SensorEventListener {
             mSensorManager.unregisterListener(this);
             mIsRegistered = false;
         }
+        mHandler.removeCallbacks(mBatchDoneTask);
+        mHandler.removeCallbacks(mNotifyTask);
+        mBatchDonePosted = false;
+        mBatchChangedSteps = false;
+        mNotifyPosted = false;
+    }
+
+    /**
+     * Unregisters, writes the history to storage and stops the I/O thread. Must not be used afterwards.
+     */
+    public void release() {
+        mReleased = true;
+        unregister();
+        mIoHandler.post(mFlushTask);
+        mIoThread.quitSafely();
+    }
+
+    private void flushHistory() {
+        StepHistory history = mHistory;
+        if (history != null) {
+            history.flush();
+        }
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_STEP_COUNTER) {
-            LocalDateTime currentStepDateTime = LocalDateTime.now();
-            if (mStepsAtMidnight == 0 || (currentStepDateTime.getDayOfYear() - lastStepDateTime.getDayOfYear()) != 0) {
-                mStepsAtMidnight = mSteps;
+        if (event.sensor.getType() == Sensor.TYPE_STEP_COUNTER && mHistory != null) {
+            if (!mBatchDonePosted) {
+                // first sample of a batch: follow changes of the time or the zone before placing the samples
+                updateLocalClockOffset();
+                // runs after all samples of the batch were delivered
+                mBatchDonePosted = true;
+                mHandler.post(mBatchDoneTask);
+            }
+            // the timestamp is in elapsed realtime nanoseconds
+            long localMillis = TimeUnit.NANOSECONDS.toMillis(event.timestamp) + mLocalClockOffset;
+            long epochHour = Math.floorDiv(localMillis, MILLIS_PER_HOUR);
+            long epochDay = Math.floorDiv(epochHour, StepHistory.HOURS_PER_DAY);
+            int counter = (int) event.values[0];
+            long state = mStepState.get();
+            int steps = stepsOf(state);
+            int stepsAtMidnight = computeStepsAtMidnight(mLastEpochDay, epochDay, steps, stepsAtMidnightOf(state), counter);
+            // the sensor callback is the only writer
+            mStepState.set(pack(counter, stepsAtMidnight));
+            mLastEpochDay = epochDay;
+            if (mHistory.record(epochHour, stepsAtMidnight, counter)) {
+                mIoHandler.removeCallbacks(mFlushTask);
+                mIoHandler.post(mFlushTask);
             }
-            mSteps = (int) event.values[0];
-            lastStepDateTime = currentStepDateTime;
+            mBatchChangedSteps |= counter != steps;
         }
     }
 
+    /**
+     * Moves the baseline of the day along with a new sample.
+     *
+     * @param lastEpochDay The local epoch day of the previous sample, {@link StepHistory#NO_DAY} if there was none
+     * @param epochDay The local epoch day of the new sample
+     * @param steps The counter value of the previous sample
+     * @param stepsAtMidnight The baseline of the previous sample
+     * @param counter The counter value of the new sample
+     * @return The baseline of the new sample
+     */
+    static int computeStepsAtMidnight(long lastEpochDay, long epochDay, int steps, int stepsAtMidnight, int counter) {
+        if (lastEpochDay == StepHistory.NO_DAY || epochDay - lastEpochDay > 1) {
+            // nothing known, or days without a sample in between: the steps before now cannot be placed in a day,
+            // count from now on
+            return counter;
+        }
+        if (epochDay != lastEpochDay) {
+            // the steps since the last sample of yesterday count for today, all of them after a reboot
+            return counter >= steps ? steps : 0;
+        }
+        if (counter < steps) {
+            // rebooted today: keep the steps walked before the reboot
+            return stepsAtMidnight - steps;
+        }
+        return stepsAtMidnight;
+    }
+
+    private void onBatchDone() {
+        mBatchDonePosted = false;
+        mLastSampleTime = SystemClock.elapsedRealtime();
+        if (mBatchChangedSteps && !mNotifyPosted) {
+            // the face shows the steps per minute, so the changes of a minute are reported together
+            mNotifyPosted = true;
+            mHandler.postDelayed(mNotifyTask, MILLIS_PER_MINUTE - System.currentTimeMillis() % MILLIS_PER_MINUTE);
+        }
+        mBatchChangedSteps = false;
+    }
+
+    private void notifyStepsChanged() {
+        mNotifyPosted = false;
+        mOnStepsChanged.run();
+    }
+
+    private void updateLocalClockOffset() {
+        long now = System.currentTimeMillis();
+        long zoneOffset = TimeUnit.SECONDS.toMillis(
+                ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(now)).getTotalSeconds());
+        mLocalClockOffset = now + zoneOffset - SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public boolean isRegistered() {
+        return mIsRegistered;
+    }
+
+    @Override
+    public long getLastSampleTime() {
+        return mLastSampleTime;
+    }
+
+    @Override
+    public long getRegisteredAt() {
+        return mRegisteredAt;
+    }
+
+    @Override
+    public void rearm() {
+        unregister();
+        register();
+    }
+
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
         // ignore
     }
 
     public int getSteps() {
-        return mSteps;
+        return stepsOf(mStepState.get());
     }
 
     public int getStepsToday() {
-        return mSteps - mStepsAtMidnight;
+        long state = mStepState.get();
+        return stepsOf(state) - stepsAtMidnightOf(state);
+    }
+
+    private static long pack(int steps, int stepsAtMidnight) {
+        return ((long) steps << 32) | (stepsAtMidnight & 0xFFFFFFFFL);
+    }
+
+    private static int stepsOf(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int stepsAtMidnightOf(long state) {
+        return (int) state;
     }
 }
@@ -0,0 +1,143 @@
+package ch.heuscher.h24watchface;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent step state in a small memory-mapped file: a header with the midnight baseline of the step counter
+ * and the last counter value, followed by a ring buffer of hourly cumulative step samples for the last
+ * {@link #DAYS} days. The baseline survives a restart of the engine and is restored in constant time.
+ *
+ * Writes go to the mapped pages, which the system writes back lazily. {@link #record(long, int, int)} tells
+ * when the hour changed, so the owner can {@link #flush()} the file then, which loses at most the samples of
+ * the current hour on a crash. Opening and flushing do file I/O and belong on a background thread.
+ *
+ * Hours are local epoch hours: the local epoch day times 24 plus the hour of the day.
+ */
+public class StepHistory {
+
+    private static final String TAG = "StepHistory";
+    public static final int DAYS = 7;
+    public static final int HOURS_PER_DAY = 24;
+    public static final long NO_DAY = Long.MIN_VALUE;
+    public static final int UNKNOWN = -1;
+
+    private static final int MAGIC = 0x48323453; // "H24S"
+    private static final int VERSION = 1;
+    private static final int SLOTS = DAYS * HOURS_PER_DAY;
+
+    // header
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int BASELINE_DAY_OFFSET = 8;
+    private static final int STEPS_AT_MIDNIGHT_OFFSET = 16;
+    private static final int LAST_STEPS_OFFSET = 20;
+    private static final int LAST_HOUR_OFFSET = 24;
+    private static final int HEADER_SIZE = 32;
+    // slots of (int epoch hour, int cumulative steps of the day)
+    private static final int SLOT_SIZE = 8;
+    private static final int FILE_SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private final ByteBuffer mBuffer;
+    private final MappedByteBuffer mMapped;
+
+    /**
+     * Opens the history file, creating it if needed. If it cannot be mapped, the history is kept in memory only.
+     *
+     * @param file The file to map
+     */
+    public StepHistory(File file) {
+        MappedByteBuffer mapped = null;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            // the mapping stays valid after the channel is closed
+            mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not map " + file + ", step history is not persisted", e);
+        }
+        mMapped = mapped;
+        mBuffer = mapped != null ? mapped : ByteBuffer.allocate(FILE_SIZE);
+        if (mBuffer.getInt(MAGIC_OFFSET) != MAGIC || mBuffer.getInt(VERSION_OFFSET) != VERSION) {
+            initialize();
+        }
+    }
+
+    private void initialize() {
+        mBuffer.putInt(MAGIC_OFFSET, MAGIC);
+        mBuffer.putInt(VERSION_OFFSET, VERSION);
+        mBuffer.putLong(BASELINE_DAY_OFFSET, NO_DAY);
+        mBuffer.putInt(STEPS_AT_MIDNIGHT_OFFSET, 0);
+        mBuffer.putInt(LAST_STEPS_OFFSET, 0);
+        mBuffer.putLong(LAST_HOUR_OFFSET, NO_DAY);
+        for (int slot = 0; slot < SLOTS; slot++) {
+            mBuffer.putInt(HEADER_SIZE + slot * SLOT_SIZE, UNKNOWN);
+        }
+    }
+
+    /**
+     * @return The local epoch day the baseline belongs to, {@link #NO_DAY} if there is none
+     */
+    public long getBaselineEpochDay() {
+        return mBuffer.getLong(BASELINE_DAY_OFFSET);
+    }
+
+    /**
+     * @return The step counter value at the start of the baseline day
+     */
+    public int getStepsAtMidnight() {
+        return mBuffer.getInt(STEPS_AT_MIDNIGHT_OFFSET);
+    }
+
+    /**
+     * @return The last step counter value that was recorded
+     */
+    public int getLastSteps() {
+        return mBuffer.getInt(LAST_STEPS_OFFSET);
+    }
+
+    /**
+     * Records a step counter sample.
+     *
+     * @param epochHour The local epoch hour of the sample
+     * @param stepsAtMidnight The step counter value at the start of the day
+     * @param steps The step counter value
+     * @return Whether this is the first sample of a new hour, a good time to {@link #flush()}
+     */
+    public boolean record(long epochHour, int stepsAtMidnight, int steps) {
+        long lastHour = mBuffer.getLong(LAST_HOUR_OFFSET);
+        mBuffer.putLong(BASELINE_DAY_OFFSET, Math.floorDiv(epochHour, HOURS_PER_DAY));
+        mBuffer.putInt(STEPS_AT_MIDNIGHT_OFFSET, stepsAtMidnight);
+        mBuffer.putInt(LAST_STEPS_OFFSET, steps);
+        mBuffer.putLong(LAST_HOUR_OFFSET, epochHour);
+        int offset = slotOffset(epochHour);
+        mBuffer.putInt(offset, (int) epochHour);
+        mBuffer.putInt(offset + 4, steps - stepsAtMidnight);
+        return lastHour != epochHour;
+    }
+
+    /**
+     * @return The steps of the day up to the end of the given local epoch hour, {@link #UNKNOWN} if not recorded
+     */
+    public int getCumulativeSteps(long epochHour) {
+        int offset = slotOffset(epochHour);
+        return mBuffer.getInt(offset) == (int) epochHour ? mBuffer.getInt(offset + 4) : UNKNOWN;
+    }
+
+    /**
+     * Forces the mapped file to storage. May run on another thread than the one recording.
+     */
+    public void flush() {
+        if (mMapped != null) {
+            mMapped.force();
+        }
+    }
+
+    private static int slotOffset(long epochHour) {
+        return HEADER_SIZE + (int) Math.floorMod(epochHour, (long) SLOTS) * SLOT_SIZE;
+    }
+}
@@ -1,10 +1,16 @@
 package ch.heuscher.h24watchface;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
 import android.location.LocationManager;
 import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.support.wearable.watchface.WatchFaceService;
 import android.util.Log;
@@ -12,25 +18,155 @@ import android.util.Log;
 /**
  * Provides system status information for display on the watch face.
  * Gathers data about WiFi, notifications, interruption filter, airplane mode, network, and GPS status.
+ *
+ * The system states are not queried per frame: they are kept in an int bitfield that is updated by
+ * a default {@link ConnectivityManager.NetworkCallback}, broadcast receivers for WiFi, airplane mode and
+ * location provider changes and an observer on the airplane mode setting. The drawing code only combines
+ * the bits with the notification state of the engine, the indicator string is rebuilt when they change.
  */
 public class SystemStatusProvider {
 
     private static final String TAG = "SystemStatusProvider";
     private static final int INTERRUPTION_FILTER_PRIORITY = WatchFaceService.INTERRUPTION_FILTER_PRIORITY;
 
+    private static final int WIFI_ENABLED = 1;
+    private static final int UNREAD = 1 << 1;
+    private static final int NOT_PRIORITY = 1 << 2;
+    private static final int AIRPLANE_MODE = 1 << 3;
+    private static final int NO_NETWORK = 1 << 4;
+    private static final int GPS_ENABLED = 1 << 5;
+    private static final int NO_STATUS = -1;
+
     private final Context context;
+    private final Runnable onStatusChanged;
+    private final Handler mainHandler;
+    private final ConnectivityManager.NetworkCallback networkCallback;
+    private final BroadcastReceiver systemStateReceiver;
+    private final ContentObserver airplaneModeObserver;
+    private boolean isRegistered = false;
+
+    // only touched on the main thread, all callbacks are delivered there
+    private int systemBits = 0;
+
+    private final StringBuilder statusBuilder = new StringBuilder();
+    private int lastBits = NO_STATUS;
+    private String lastDebugInfo = null;
+    private String lastStatus = "";
 
     /**
      * Creates a new SystemStatusProvider.
      *
      * @param context The context to use for system service access
+     * @param onStatusChanged Called on the main thread when a system state changed
      */
-    public SystemStatusProvider(Context context) {
+    public SystemStatusProvider(Context context, Runnable onStatusChanged) {
         this.context = context;
+        this.onStatusChanged = onStatusChanged;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                setBit(NO_NETWORK, false);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                setBit(NO_NETWORK, true);
+            }
+        };
+        this.systemStateReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                refresh();
+            }
+        };
+        this.airplaneModeObserver = new ContentObserver(mainHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                refresh();
+            }
+        };
+    }
+
+    /**
+     * Starts listening to the system states and reads their current values.
+     */
+    public void register() {
+        if (isRegistered) {
+            return;
+        }
+        try {
+            IntentFilter filter = new IntentFilter(WifiManager.WIFI_STATE_CHANGED_ACTION);
+            filter.addAction(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+            filter.addAction(LocationManager.PROVIDERS_CHANGED_ACTION);
+            context.registerReceiver(systemStateReceiver, filter);
+            context.getContentResolver().registerContentObserver(
+                    Settings.Global.getUriFor(Settings.Global.AIRPLANE_MODE_ON), false, airplaneModeObserver);
+            ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (connectivityManager != null) {
+                setBit(NO_NETWORK, connectivityManager.getActiveNetwork() == null);
+                connectivityManager.registerDefaultNetworkCallback(networkCallback, mainHandler);
+            }
+            isRegistered = true;
+        } catch (Throwable t) {
+            Log.e(TAG, "Error registering for system status changes", t);
+        }
+        refresh();
+    }
+
+    public void unregister() {
+        if (!isRegistered) {
+            return;
+        }
+        try {
+            context.unregisterReceiver(systemStateReceiver);
+            context.getContentResolver().unregisterContentObserver(airplaneModeObserver);
+            ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (connectivityManager != null) {
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+            }
+        } catch (Throwable t) {
+            Log.e(TAG, "Error unregistering from system status changes", t);
+        }
+        isRegistered = false;
     }
 
     /**
-     * Gathers all system status indicators and returns them as a string.
+     * Reads the WiFi, airplane mode and GPS states. Only called when one of them was reported to change.
+     */
+    private void refresh() {
+        int bits = systemBits & NO_NETWORK;
+        try {
+            WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+            if (wifiManager != null && wifiManager.isWifiEnabled()) {
+                bits |= WIFI_ENABLED;
+            }
+            if (Settings.Global.getInt(context.getContentResolver(), Settings.Global.AIRPLANE_MODE_ON, 0) == 1) {
+                bits |= AIRPLANE_MODE;
+            }
+            LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+            if (locationManager != null && locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+                bits |= GPS_ENABLED;
+            }
+        } catch (Throwable t) {
+            Log.e(TAG, "Error getting system status", t);
+        }
+        update(bits);
+    }
+
+    private void setBit(int bit, boolean value) {
+        update(value ? systemBits | bit : systemBits & ~bit);
+    }
+
+    private void update(int bits) {
+        if (bits != systemBits) {
+            systemBits = bits;
+            onStatusChanged.run();
+        }
+    }
+
+    /**
+     * Returns all system status indicators as a string.
      * Each status is represented by a single character:
      * - W: WiFi enabled
      * - i: Unread notifications
@@ -42,38 +178,42 @@ public class SystemStatusProvider {
      * @param debugInfo Optional debug information to prepend
      * @param unreadCount Number of unread notifications
      * @param interruptionFilter Current interruption filter mode
-     * @return String containing all active status indicators
+     * @return String containing all active status indicators, the same instance as long as it does not change
      */
     public String getSystemStatus(String debugInfo, int unreadCount, int interruptionFilter) {
-        String specials = "" + (debugInfo != null ? debugInfo : "");
-        try {
-            WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-            if (wifiManager != null && wifiManager.isWifiEnabled()) {
-                specials += "W";
-            }
-            if (unreadCount > 0) {
-                specials += "i";
-            }
-            if (interruptionFilter != INTERRUPTION_FILTER_PRIORITY) {
-                specials += "<";
-            }
-            if (Settings.Global.getInt(context.getContentResolver(), Settings.Global.AIRPLANE_MODE_ON) == 1) {
-                specials += ">";
-            } else {
-                ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-                Network activeNetwork = connectivityManager.getActiveNetwork();
-                if (activeNetwork == null) {
-                    specials += "X";
-                }
-            }
-            LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
-            if (locationManager != null && locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
-                specials += "⌖";
-            }
-        } catch (Throwable t) {
-            // No longer able to draw on canvas from here, so logging the error is the best we can do
-            Log.e(TAG, "Error getting system status", t);
+        int bits = systemBits
+                | (unreadCount > 0 ? UNREAD : 0)
+                | (interruptionFilter != INTERRUPTION_FILTER_PRIORITY ? NOT_PRIORITY : 0);
+        if (bits == lastBits && debugInfo == lastDebugInfo) {
+            return lastStatus;
+        }
+        StringBuilder specials = statusBuilder;
+        specials.setLength(0);
+        if (debugInfo != null) {
+            specials.append(debugInfo);
+        }
+        if ((bits & WIFI_ENABLED) != 0) {
+            specials.append("W");
+        }
+        if ((bits & UNREAD) != 0) {
+            specials.append("i");
+        }
+        if ((bits & NOT_PRIORITY) != 0) {
+            specials.append("<");
+        }
+        if ((bits & AIRPLANE_MODE) != 0) {
+            specials.append(">");
+        } else if ((bits & NO_NETWORK) != 0) {
+            specials.append("X");
+        }
+        if ((bits & GPS_ENABLED) != 0) {
+            specials.append("⌖");
+        }
+        if (!lastStatus.contentEquals(specials)) {
+            lastStatus = specials.toString();
         }
-        return specials;
+        lastBits = bits;
+        lastDebugInfo = debugInfo;
+        return lastStatus;
     }
 }
@@ -0,0 +1,102 @@
+package ch.heuscher.h24watchface;
+
+import static ch.heuscher.h24watchface.WatchFaceConstants.DE_CH_LOCALE;
+import static ch.heuscher.h24watchface.WatchFaceConstants.ISO_DATE_WITH_DAYOFWEEK;
+
+import java.text.DecimalFormatSymbols;
+import java.time.ZonedDateTime;
+
+/**
+ * The formatted texts of the face, each recomputed only when its value changes: the date on a new day,
+ * the step counters when the count changes. The minutes come from a table.
+ * Counts are formatted with a digit table and the de-CH grouping separator into a reused buffer,
+ * instead of going through {@link java.text.NumberFormat}.
+ */
+public class TextAtoms {
+
+    private static final String[] MINUTE_TEXTS = new String[60];
+
+    static {
+        for (int minute = 0; minute < MINUTE_TEXTS.length; minute++) {
+            MINUTE_TEXTS[minute] = (minute < 10 ? "0" : "") + minute;
+        }
+    }
+
+    private static final char[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+    // enough for the grouped digits of any int including the sign
+    private static final int MAX_NUMBER_LENGTH = 16;
+
+    private final char mGroupingSeparator = DecimalFormatSymbols.getInstance(DE_CH_LOCALE).getGroupingSeparator();
+    private final char[] mNumberBuffer = new char[MAX_NUMBER_LENGTH];
+
+    private long mEpochDay = Long.MIN_VALUE;
+    private String mDate;
+
+    private int mSteps = Integer.MIN_VALUE;
+    private String mStepsText;
+    private int mStepsToday = Integer.MIN_VALUE;
+    private String mStepsTodayText;
+
+    /**
+     * @return The date with the day of week, e.g. "Mo. 2024-03-18", formatted once per day
+     */
+    public String getDate(ZonedDateTime zonedDateTime) {
+        long epochDay = zonedDateTime.toLocalDate().toEpochDay();
+        if (epochDay != mEpochDay) {
+            mDate = zonedDateTime.format(ISO_DATE_WITH_DAYOFWEEK);
+            mEpochDay = epochDay;
+        }
+        return mDate;
+    }
+
+    /**
+     * @return The minutes of the hour with two digits
+     */
+    public String getMinutes(ZonedDateTime zonedDateTime) {
+        return MINUTE_TEXTS[zonedDateTime.getMinute()];
+    }
+
+    /**
+     * @return The formatted step count since the last reboot
+     */
+    public String getSteps(int steps) {
+        if (steps != mSteps) {
+            mStepsText = formatGrouped(steps);
+            mSteps = steps;
+        }
+        return mStepsText;
+    }
+
+    /**
+     * @return The formatted step count of today
+     */
+    public String getStepsToday(int stepsToday) {
+        if (stepsToday != mStepsToday) {
+            mStepsTodayText = formatGrouped(stepsToday);
+            mStepsToday = stepsToday;
+        }
+        return mStepsTodayText;
+    }
+
+    /**
+     * Formats an integer with groups of three digits, like the de-CH number format (e.g. 12'345).
+     */
+    private String formatGrouped(int value) {
+        // negative to also cover Integer.MIN_VALUE
+        int remaining = value > 0 ? -value : value;
+        int position = MAX_NUMBER_LENGTH;
+        int digits = 0;
+        do {
+            if (digits > 0 && digits % 3 == 0) {
+                mNumberBuffer[--position] = mGroupingSeparator;
+            }
+            mNumberBuffer[--position] = DIGITS[-(remaining % 10)];
+            remaining /= 10;
+            digits++;
+        } while (remaining != 0);
+        if (value < 0) {
+            mNumberBuffer[--position] = '-';
+        }
+        return new String(mNumberBuffer, position, MAX_NUMBER_LENGTH - position);
+    }
+}
@@ -0,0 +1,78 @@
+package ch.heuscher.h24watchface;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * Bounded cache of text widths, keyed by text, typeface, text size and letter spacing of the paint.
+ * Most strings of the face change at most once per minute, so nearly every {@link Paint#measureText(String)}
+ * of a frame can be answered from here.
+ *
+ * The entries live in parallel arrays, organized as sets of a few entries selected by the hash of the key,
+ * the least recently used entry of a set is replaced. A lookup therefore neither allocates nor scans the whole
+ * cache. Only the width is stored: pre-shaped text (TextBlob) is not available on the supported API levels.
+ */
+public class TextMeasureCache {
+
+    private static final int SETS = 32;
+    private static final int WAYS = 4;
+    private static final int CAPACITY = SETS * WAYS;
+
+    private final String[] mTexts = new String[CAPACITY];
+    private final Typeface[] mTypefaces = new Typeface[CAPACITY];
+    private final float[] mTextSizes = new float[CAPACITY];
+    private final float[] mLetterSpacings = new float[CAPACITY];
+    private final float[] mWidths = new float[CAPACITY];
+    private final long[] mLastUsed = new long[CAPACITY];
+    private long mTick = 0;
+
+    private int mHits = 0;
+    private int mMisses = 0;
+
+    /**
+     * Returns the width of the text in the style of the paint, measuring it on a miss.
+     *
+     * @param text The text to measure
+     * @param paint The paint with typeface, text size and letter spacing to use
+     * @return The width as given by {@link Paint#measureText(String)}
+     */
+    public float measureText(String text, Paint paint) {
+        Typeface typeface = paint.getTypeface();
+        float textSize = paint.getTextSize();
+        float letterSpacing = paint.getLetterSpacing();
+        int hash = text.hashCode() * 31 + Float.floatToIntBits(textSize);
+        int first = ((hash ^ (hash >>> 16)) & (SETS - 1)) * WAYS;
+
+        int leastRecentlyUsed = first;
+        for (int entry = first; entry < first + WAYS; entry++) {
+            String cached = mTexts[entry];
+            if (cached != null && mTypefaces[entry] == typeface && mTextSizes[entry] == textSize
+                    && mLetterSpacings[entry] == letterSpacing && (cached == text || cached.equals(text))) {
+                mLastUsed[entry] = ++mTick;
+                mHits++;
+                return mWidths[entry];
+            }
+            if (mLastUsed[entry] < mLastUsed[leastRecentlyUsed]) {
+                leastRecentlyUsed = entry;
+            }
+        }
+
+        float width = paint.measureText(text);
+        mTexts[leastRecentlyUsed] = text;
+        mTypefaces[leastRecentlyUsed] = typeface;
+        mTextSizes[leastRecentlyUsed] = textSize;
+        mLetterSpacings[leastRecentlyUsed] = letterSpacing;
+        mWidths[leastRecentlyUsed] = width;
+        mLastUsed[leastRecentlyUsed] = ++mTick;
+        mMisses++;
+        return width;
+    }
+
+    public int getHits() {
+        return mHits;
+    }
+
+    public int getMisses() {
+        return mMisses;
+    }
+}
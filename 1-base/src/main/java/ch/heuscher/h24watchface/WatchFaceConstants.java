@@ -3,7 +3,6 @@ package ch.heuscher.h24watchface;
 import android.graphics.Color;
 import android.provider.CalendarContract;
 
-import java.text.NumberFormat;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 
@@ -29,10 +28,12 @@ public final class WatchFaceConstants {
 
 
     // Time & Date
-    public static final DateTimeFormatter MINUTES_FORMATTER = DateTimeFormatter.ofPattern("mm");
     public static final DateTimeFormatter ISO_DATE_WITH_DAYOFWEEK = DateTimeFormatter.ofPattern("E yyyy-MM-dd").withLocale(DE_CH_LOCALE);
     public static final float DEGREES_PER_HOUR = 15f;
     public static final float DEGREES_PER_MINUTE = 0.25f;
+    // resolution of the precomputed dial tables: quarter degrees, which is exactly one step per minute of the 24 hours
+    public static final int DIAL_STEPS_PER_DEGREE = 4;
+    public static final int DIAL_STEPS = 360 * DIAL_STEPS_PER_DEGREE;
 
     // Colors
     public static final int COLOR_6_H = Color.argb(255, 0, 255, 0);
@@ -49,12 +50,16 @@ public final class WatchFaceConstants {
     public static final float LOW_LIGHT_BRIGHTNESS_BOOST = 0.15f;
     public static final int MEETING_PRE_ANNOUNCE_DURATION = 50;
     public static final long CALENDAR_QUERY_WINDOW_HOURS = 18L;
+    public static final long CALENDAR_REFRESH_INTERVAL_MINUTES = 5L;
     public static final long ALARM_DISPLAY_WINDOW_HOURS = 18L;
 
     // Text & Formatting
-    public static final NumberFormat DE_CH_NUMBER = NumberFormat.getNumberInstance(DE_CH_LOCALE);
     public static final int EVENT_TITLE_MAX_LENGTH_LINE_1 = 22;
     public static final int EVENT_TITLE_MAX_LENGTH = 50;
+    public static final String[] HOUR_TEXTS = {
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12",
+            "13", "14", "15", "16", "17", "18", "19", "20", "21", "22", "23", "24"
+    };
 
     // Calendar Provider
     public static final String[] PROJECTION = {
@@ -1,49 +1,95 @@
 package ch.heuscher.h24watchface;
 
-import static ch.heuscher.h24watchface.WatchFaceConstants.ALARM_DISPLAY_WINDOW_HOURS;
 import static ch.heuscher.h24watchface.WatchFaceConstants.COLORS;
 import static ch.heuscher.h24watchface.WatchFaceConstants.DARK_MODE_HUE;
 import static ch.heuscher.h24watchface.WatchFaceConstants.DARK_MODE_SATURATION;
 import static ch.heuscher.h24watchface.WatchFaceConstants.DECENTERING_CORRECTION;
 import static ch.heuscher.h24watchface.WatchFaceConstants.DEGREES_PER_HOUR;
 import static ch.heuscher.h24watchface.WatchFaceConstants.DEGREES_PER_MINUTE;
-import static ch.heuscher.h24watchface.WatchFaceConstants.DE_CH_NUMBER;
 import static ch.heuscher.h24watchface.WatchFaceConstants.EVENT_MARKER_RADIUS;
 import static ch.heuscher.h24watchface.WatchFaceConstants.EVENT_MARKER_RADIUS_MINIMAL;
-import static ch.heuscher.h24watchface.WatchFaceConstants.EVENT_TITLE_MAX_LENGTH;
-import static ch.heuscher.h24watchface.WatchFaceConstants.EVENT_TITLE_MAX_LENGTH_LINE_1;
 import static ch.heuscher.h24watchface.WatchFaceConstants.HOUR_MARKER_RADIUS;
-import static ch.heuscher.h24watchface.WatchFaceConstants.ISO_DATE_WITH_DAYOFWEEK;
-import static ch.heuscher.h24watchface.WatchFaceConstants.LOW_BATTERY_THRESHOLD;
+import static ch.heuscher.h24watchface.WatchFaceConstants.HOUR_TEXTS;
 import static ch.heuscher.h24watchface.WatchFaceConstants.LOW_LIGHT_BRIGHTNESS_BOOST;
 import static ch.heuscher.h24watchface.WatchFaceConstants.MEETING_PRE_ANNOUNCE_DURATION;
-import static ch.heuscher.h24watchface.WatchFaceConstants.MINUTES_FORMATTER;
 import static ch.heuscher.h24watchface.WatchFaceConstants.RAND_RESERVE;
 import static ch.heuscher.h24watchface.WatchFaceConstants.STROKE_WIDTH;
 import static ch.heuscher.h24watchface.WatchFaceConstants.TEXT_SIZE;
 
-import android.app.AlarmManager;
-import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.os.BatteryManager;
-import android.provider.Settings;
 import android.support.v4.graphics.ColorUtils;
 
 import java.time.LocalTime;
 import java.time.ZonedDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class WatchFaceDrawer {
 
-    private final Context mContext;
+    /**
+     * The state a frame is drawn from, implemented by the engine. All values belong to the current frame.
+     */
+    public interface Face {
+        boolean isAmbient();
+
+        boolean isDarkMode();
+
+        boolean isMinimalMode();
+
+        boolean isShowMinutesDateAndMeetings();
+
+        float getRotate();
+
+        /**
+         * @return The light factor, see {@link DimmingController#getNextDimm()}
+         */
+        float getNextDimm();
+
+        float getMinLuminance();
+
+        /**
+         * Called with the light factor the frame was drawn with, see {@link DimmingController#setLastDimm(float)}
+         */
+        void setLastDimm(float lastDimm);
+
+        BrightnessSettings getBrightnessSettings();
+
+        CalendarSnapshot getCalendarSnapshot();
+
+        int getSteps();
+
+        int getStepsToday();
+
+        /**
+         * @return The status indicators, the same instance as long as they do not change
+         */
+        String getSpecials();
+
+        BatteryMonitor getBatteryMonitor();
+
+        AlarmMonitor getAlarmMonitor();
+
+        LocalTime getLastCountdownTime();
+
+        long getCountdownRemainingMillis(long now);
+
+        ZonedDateTime getZonedDateTime();
+    }
+
     private final ColorCalculator mColorCalculator;
+    private final DialLayerCache mDialLayerCache;
+    private final HourGlyphCache mHourGlyphCache;
+    private final EventTitleLines mEventTitleLines;
+    private final DialGeometry mGeometry;
+    private final TextMeasureCache mTextMeasureCache;
+    private final TextAtoms mTextAtoms;
+    private DialGeometry.Ring mMarkerRing;
+    private DialGeometry.Ring mHourDotRing;
+    // same-paint circles are drawn as one path each
+    private final CircleBatch mMarkerDots = new CircleBatch();
+    private final CircleBatch mEventMarkers = new CircleBatch();
 
     private Paint mBackgroundPaint;
     private Paint mHandPaint;
@@ -59,10 +105,21 @@ public class WatchFaceDrawer {
     private float mCenterY;
     private int mWidth;
     private int mHeight;
+    // the text lines that fit from the top info down to the bottom, an upper bound for the announced events
+    private int mMaxTextLines;
 
-    public WatchFaceDrawer(Context context) {
-        this.mContext = context;
+    // the countdown text is rebuilt only when the shown value or unit changes
+    private int mCountdownKey = -1;
+    private String mCountdownText;
+
+    public WatchFaceDrawer() {
         this.mColorCalculator = new ColorCalculator();
+        this.mDialLayerCache = new DialLayerCache();
+        this.mHourGlyphCache = new HourGlyphCache();
+        this.mEventTitleLines = new EventTitleLines(1);
+        this.mGeometry = new DialGeometry();
+        this.mTextMeasureCache = new TextMeasureCache();
+        this.mTextAtoms = new TextAtoms();
 
         mLight = Typeface.create("sans-serif-thin", Typeface.NORMAL);
         mNormal = Typeface.create("sans-serif", Typeface.NORMAL);
@@ -98,62 +155,77 @@ public class WatchFaceDrawer {
         mHourHandLength = mCenterX - 2 * RAND_RESERVE;
         mHourPaint.setTextSize(height * 0.95f);
         mMinutesPaint.setTextSize(mCenterY / 2);
-    }
-
-    public void onDraw(Canvas canvas, MyWatchFaceService.Engine engine, ZonedDateTime zonedDateTime, DimmingController dimmingController) {
-        float mRotate = engine.getRotate();
+        mDialLayerCache.onSurfaceChanged(width, height);
+        mGeometry.onSurfaceChanged(mCenterX, mCenterY);
+        mMarkerRing = mGeometry.ring(mHourHandLength);
+        mHourDotRing = mGeometry.ring(getHourDotCenter());
+        mMaxTextLines = (int) ((2 * mCenterY - getTopInfoStart()) / getNextLine(0)) + 1;
+        mEventTitleLines.setSlots(mMaxTextLines);
+        // same placement as drawTextUprightFromCenter at 0 degrees with the decentering correction as radius
+        mHourGlyphCache.setPosition(mCenterX, mCenterY + mHourPaint.getTextSize() / 24 * 7 - DECENTERING_CORRECTION);
+    }
+
+    /**
+     * Draws a frame. The steady-state path does not allocate: everything that changes at most once per minute
+     * or with the display modes is cached.
+     *
+     * @param zonedDateTime The current minute, see {@link FrameClock}
+     * @param now The exact time of the frame in epoch milliseconds
+     */
+    public void onDraw(Canvas canvas, Face face, ZonedDateTime zonedDateTime, long now) {
+        float mRotate = face.getRotate();
 
         canvas.rotate(mRotate, mCenterX, mCenterY);
         drawBackground(canvas);
 
-        float lightFactor = updateAndGetLightFactor(engine, dimmingController);
+        float lightFactor = updateAndGetLightFactor(face);
         final float hoursRotation = getDegreesFromNorth(zonedDateTime);
         int colorFromHour = mColorCalculator.getColorDegrees(hoursRotation);
-        int handPaintColor = mColorCalculator.getHandPaintColor(engine.isDarkMode(), lightFactor);
+        int handPaintColor = mColorCalculator.getHandPaintColor(face.isDarkMode(), lightFactor);
 
-        updatePaints(engine, lightFactor, handPaintColor);
+        updatePaints(face, lightFactor, handPaintColor);
 
-        boolean active = !(engine.isAmbient() || engine.isDarkMode());
+        boolean active = !(face.isAmbient() || face.isDarkMode());
 
-        List<CalendarEvent> events = drawHourAndEvents(canvas, engine, zonedDateTime, colorFromHour, handPaintColor, lightFactor);
+        EventIntervalIndex events = drawHourAndEvents(canvas, face, zonedDateTime, colorFromHour, handPaintColor, lightFactor);
 
-        drawWatchHand(canvas, engine, hoursRotation, colorFromHour, handPaintColor, lightFactor);
+        drawWatchHand(canvas, face, hoursRotation, colorFromHour, handPaintColor, lightFactor);
 
-        String specials = engine.getSpecials();
-        drawHourMarkers(canvas, engine, active, specials);
+        String specials = face.getSpecials();
+        drawHourMarkers(canvas, face, active, specials);
 
-        drawInfoText(canvas, engine, zonedDateTime, events, specials);
+        drawInfoText(canvas, face, zonedDateTime, now, events, specials);
 
-        drawInteractiveElements(canvas, engine);
+        drawInteractiveElements(canvas, face);
 
-        dimmingController.setLastDimm(lightFactor);
+        face.setLastDimm(lightFactor);
     }
 
     private void drawBackground(Canvas canvas) {
         canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mBackgroundPaint);
     }
 
-    private float updateAndGetLightFactor(MyWatchFaceService.Engine engine, DimmingController dimmingController) {
-        float lightFactor = dimmingController.getNextDimm() == null ? 1f : dimmingController.getNextDimm();
-        if (!engine.isAmbient() && lightFactor <= 2 * dimmingController.getMinLuminance()
-                && Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC == Settings.System.getInt(mContext.getContentResolver(), Settings.System.SCREEN_BRIGHTNESS_MODE, Settings.System.SCREEN_BRIGHTNESS_MODE_MANUAL)) {
+    private float updateAndGetLightFactor(Face face) {
+        float lightFactor = face.getNextDimm();
+        if (!face.isAmbient() && lightFactor <= 2 * face.getMinLuminance()
+                && face.getBrightnessSettings().isAutomatic()) {
             lightFactor += LOW_LIGHT_BRIGHTNESS_BOOST; // counteract too much automatic dimming in very low light
         }
         return lightFactor;
     }
 
-    private void updatePaints(MyWatchFaceService.Engine engine, float lightFactor, int handPaintColor) {
+    private void updatePaints(Face face, float lightFactor, int handPaintColor) {
         mHandPaint.setColor(handPaintColor);
         mHourPaint.setColor(handPaintColor);
         mMinutesPaint.setColor(handPaintColor);
 
-        boolean betterReadableInDarkMode = engine.isDarkMode() && lightFactor <= DimmingController.VERY_DARK;
-        mHandPaint.setTypeface((!engine.isDarkMode() || betterReadableInDarkMode) ? mNormal : mLight);
+        boolean betterReadableInDarkMode = face.isDarkMode() && lightFactor <= DimmingController.VERY_DARK;
+        mHandPaint.setTypeface((!face.isDarkMode() || betterReadableInDarkMode) ? mNormal : mLight);
         mHandPaint.setStrokeWidth(STROKE_WIDTH * (betterReadableInDarkMode ? 2 : 1));
 
         float strokeWidth = 6;
         Typeface typeface = mBold;
-        if (engine.isDarkMode()) {
+        if (face.isDarkMode()) {
             strokeWidth = Math.max(lightFactor * 3, 1.5f);
             typeface = lightFactor < DimmingController.VERY_DARK ? mLight : mNormal;
         }
@@ -163,244 +235,275 @@ public class WatchFaceDrawer {
         mMinutesPaint.setStrokeWidth(Math.min(4f, strokeWidth));
     }
 
-    private List<CalendarEvent> drawHourAndEvents(Canvas canvas, MyWatchFaceService.Engine engine, ZonedDateTime mZonedDateTime, int colorFromHour, int handPaintColor, float lightFactor) {
+    private EventIntervalIndex drawHourAndEvents(Canvas canvas, Face face, ZonedDateTime mZonedDateTime, int colorFromHour, int handPaintColor, float lightFactor) {
         int hour = mZonedDateTime.getHour();
         int minutes = mZonedDateTime.getMinute();
 
-        if (engine.isMinimalMode()) {
-            return new ArrayList<>();
+        if (face.isMinimalMode()) {
+            return EventIntervalIndex.EMPTY;
         }
 
-        List<CalendarEvent> events = engine.getCalendarEvents();
-        events.sort(Comparator.comparing(CalendarEvent::getBegin));
+        // already sorted and indexed by the background loader
+        CalendarSnapshot snapshot = face.getCalendarSnapshot();
+        EventIntervalIndex events = snapshot.getIndex();
 
-        // Draw the hour text
-        String hourText = "" + hour;
-        float decenter = DECENTERING_CORRECTION;
+        // Draw the hour text from its cached outline
+        HourGlyphCache.Glyph hourGlyph = mHourGlyphCache.get(hour, mHourPaint);
         mHourPaint.setColor(colorFromHour);
-        mHourPaint.setAlpha(mColorCalculator.calculateAlpha(engine.isDarkMode(), lightFactor));
+        mHourPaint.setAlpha(mColorCalculator.calculateAlpha(face.isDarkMode(), lightFactor));
         mHourPaint.setStyle(Paint.Style.FILL);
-        Rect boundsText = new Rect();
-        mHourPaint.getTextBounds(hourText, 0, hourText.length(), boundsText);
-        drawTextUprightFromCenter(canvas, 0, decenter, hourText, mHourPaint, null);
+        canvas.drawPath(hourGlyph.getPath(), mHourPaint);
 
         // Fill background based on meetings
-        adaptBackGroundNrWithMeetings(canvas, engine, minutes, boundsText.height(), events);
+        adaptBackGroundNrWithMeetings(canvas, mZonedDateTime.toEpochSecond() * 1000, minutes, hourGlyph.getHeight(), snapshot.getTimeline());
 
         // Draw the outline of the hour text
         mHourPaint.setColor(handPaintColor);
         mHourPaint.setStyle(Paint.Style.STROKE);
         mHourPaint.setAlpha(255);
-        drawTextUprightFromCenter(canvas, 0, decenter, hourText, mHourPaint, null);
+        canvas.drawPath(hourGlyph.getPath(), mHourPaint);
 
         // Draw step count
-        if (!engine.isAmbient()) {
-            float showMinutesCorrection = engine.isShowMinutesDateAndMeetings() ? 1.6f : 0.85f;
+        if (!face.isAmbient()) {
+            float showMinutesCorrection = face.isShowMinutesDateAndMeetings() ? 1.6f : 0.85f;
             drawTextUprightFromCenter(canvas, 180, mCenterY / 3 * (0.1f + showMinutesCorrection),
-                    DE_CH_NUMBER.format(engine.getSteps()), mHandPaint, null);
+                    mTextAtoms.getSteps(face.getSteps()), mHandPaint, null);
             drawTextUprightFromCenter(canvas, 180, mCenterY / 3 * (0.65f + showMinutesCorrection),
-                    DE_CH_NUMBER.format(engine.getStepsToday()), mHandPaint, null);
+                    mTextAtoms.getStepsToday(face.getStepsToday()), mHandPaint, null);
         }
 
         return events;
     }
 
-    private void drawWatchHand(Canvas canvas, MyWatchFaceService.Engine engine, float hoursRotation, int colorFromHour, int handPaintColor, float lightFactor) {
+    private void drawWatchHand(Canvas canvas, Face face, float hoursRotation, int colorFromHour, int handPaintColor, float lightFactor) {
         mHandPaint.setColor(colorFromHour);
-        mHandPaint.setAlpha(mColorCalculator.calculateAlpha(engine.isDarkMode(), lightFactor));
-        float hourDotCenter = mHourHandLength + 2 * RAND_RESERVE;
+        mHandPaint.setAlpha(mColorCalculator.calculateAlpha(face.isDarkMode(), lightFactor));
+        float hourDotCenter = getHourDotCenter();
         float hourDotRadius = RAND_RESERVE * 2f;
         float hourDotOuterRadius = RAND_RESERVE * 3.5f;
 
-        drawCircle(canvas, hoursRotation, hourDotCenter, hourDotRadius, mHandPaint);
+        drawCircle(canvas, mHourDotRing, hoursRotation, hourDotRadius, mHandPaint);
         mHandPaint.setColor(handPaintColor);
         drawLineFromCenter(canvas, hoursRotation, hourDotCenter - hourDotOuterRadius, mCenterX + RAND_RESERVE, mHandPaint);
         mHandPaint.setStyle(Paint.Style.STROKE);
-        drawCircle(canvas, hoursRotation, hourDotCenter, hourDotOuterRadius, mHandPaint);
+        drawCircle(canvas, mHourDotRing, hoursRotation, hourDotOuterRadius, mHandPaint);
 
-        if (engine.isMinimalMode()) {
+        if (face.isMinimalMode()) {
             drawCircle(canvas, hoursRotation, 0, mCenterX / 75, mHandPaint);
             drawLineFromCenter(canvas, hoursRotation, mCenterX / 75, mCenterX / 6.5f, mHandPaint);
         }
         mHandPaint.setStyle(Paint.Style.FILL);
     }
 
-    private void drawHourMarkers(Canvas canvas, MyWatchFaceService.Engine engine, boolean active, String specials) {
+    private void drawHourMarkers(Canvas canvas, Face face, boolean active, String specials) {
+        if (!active && !face.isMinimalMode()) {
+            return;
+        }
+        float nextDimm = face.getNextDimm();
+        long key = DialLayerCache.key(face.isDarkMode(), face.isMinimalMode(), active, specials.length() > 0,
+                face.isDarkMode() && nextDimm < DimmingController.VERY_DARK, mHandPaint.getColor());
+        if (!mDialLayerCache.isValid(key)) {
+            renderHourMarkers(mDialLayerCache.beginRender(key), face, active, specials);
+        }
+        mDialLayerCache.draw(canvas);
+    }
+
+    private void renderHourMarkers(Canvas canvas, Face face, boolean active, String specials) {
         float hourTextDistance = mCenterX * 0.9f;
-        if (!active && engine.isMinimalMode()) {
-            writeHour(canvas, engine, hourTextDistance, 12, "", false, true, false);
+        if (!active && face.isMinimalMode()) {
+            writeHour(canvas, face, hourTextDistance, 12, "", false, true, false);
         }
         for (int i = 1; active && i <= 24 - Math.min(1, specials.length()); i++) {
-            boolean writeNumber = i % 2 == 0 && (engine.isMinimalMode() || (i <= 21 && i >= 3));
-            writeHour(canvas, engine, hourTextDistance, i, "" + i, writeNumber, !writeNumber, true);
+            boolean writeNumber = i % 2 == 0 && (face.isMinimalMode() || (i <= 21 && i >= 3));
+            writeHour(canvas, face, hourTextDistance, i, HOUR_TEXTS[i], writeNumber, !writeNumber, true);
         }
+        // the black dots in the middle of the markers
+        mMarkerDots.draw(canvas, mBackgroundPaint);
     }
 
-    private void drawInfoText(Canvas canvas, MyWatchFaceService.Engine engine, ZonedDateTime mZonedDateTime, List<CalendarEvent> events, String specials) {
+    private void drawInfoText(Canvas canvas, Face face, ZonedDateTime mZonedDateTime, long now, EventIntervalIndex events, String specials) {
 
-        drawBatteryLowWarning(canvas);
+        drawBatteryLowWarning(canvas, face.getBatteryMonitor());
 
-        if (!engine.isMinimalMode() && engine.isShowMinutesDateAndMeetings()) {
-            drawMinutes(canvas, engine, mZonedDateTime);
+        if (!face.isMinimalMode() && face.isShowMinutesDateAndMeetings()) {
+            drawMinutes(canvas, face, mZonedDateTime);
         }
 
-        drawAlarms(canvas, mZonedDateTime);
+        drawAlarms(canvas, face.getAlarmMonitor(), now);
 
-        float currentY = drawTopInfo(canvas, engine, mZonedDateTime, specials);
+        float currentY = drawTopInfo(canvas, face, mZonedDateTime, now, specials);
 
-        drawCalendarEvents(canvas, engine, mZonedDateTime, events, currentY);
+        drawCalendarEvents(canvas, face, now, events, currentY);
     }
 
-    private void drawBatteryLowWarning(Canvas canvas) {
-        BatteryManager batteryManager = (BatteryManager) mContext.getSystemService(Context.BATTERY_SERVICE);
-        if (batteryManager != null && batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) <= LOW_BATTERY_THRESHOLD) {
+    private void drawBatteryLowWarning(Canvas canvas, BatteryMonitor batteryMonitor) {
+        String warningText = batteryMonitor.getWarningText();
+        if (warningText != null) {
             mHandPaint.setColor(Color.RED);
-            drawTextUprightFromCenter(canvas, 0, 0, "Battery: " + batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) + "% !", mHandPaint, null);
+            drawTextUprightFromCenter(canvas, 0, 0, warningText, mHandPaint, null);
         }
     }
 
-    private void drawMinutes(Canvas canvas, MyWatchFaceService.Engine engine, ZonedDateTime zonedDateTime) {
-        String minutesText = zonedDateTime.format(MINUTES_FORMATTER);
+    private void drawMinutes(Canvas canvas, Face face, ZonedDateTime zonedDateTime) {
+        String minutesText = mTextAtoms.getMinutes(zonedDateTime);
         drawTextUprightFromCenter(canvas, 180, mCenterY / 3 * 1.01f, minutesText,
-                mMinutesPaint, engine.isDarkMode() ? mLight : null);
-    }
-
-    private void drawAlarms(Canvas canvas, ZonedDateTime zonedDateTime) {
-        AlarmManager alarm = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
-        if (alarm != null) {
-            AlarmManager.AlarmClockInfo nextAlarmClock = alarm.getNextAlarmClock();
-            if (nextAlarmClock != null && nextAlarmClock.getTriggerTime() - TimeUnit.HOURS.toMillis(ALARM_DISPLAY_WINDOW_HOURS) < zonedDateTime.toInstant().toEpochMilli()) {
-                ZonedDateTime alarmTime = ZonedDateTime.ofInstant(java.time.Instant.ofEpochMilli(nextAlarmClock.getTriggerTime()), zonedDateTime.getZone());
-                String alarmText = "A";
-                drawTextUprightFromCenter(canvas, getDegreesFromNorth(alarmTime),
-                        mHourHandLength, alarmText, mHandPaint, null);
-            }
+                mMinutesPaint, face.isDarkMode() ? mLight : null);
+    }
+
+    private void drawAlarms(Canvas canvas, AlarmMonitor alarmMonitor, long now) {
+        if (alarmMonitor.isShownAt(now)) {
+            String alarmText = "A";
+            drawTextUprightFromCenter(canvas, alarmMonitor.getDegreesFromNorth(),
+                    mHourHandLength, alarmText, mHandPaint, null);
         }
     }
 
-    private float drawTopInfo(Canvas canvas, MyWatchFaceService.Engine engine, ZonedDateTime zonedDateTime, String specials) {
-        float currentY = mCenterY - mCenterX * 0.8f;
+    private float drawTopInfo(Canvas canvas, Face face, ZonedDateTime zonedDateTime, long now, String specials) {
+        float currentY = getTopInfoStart();
 
         // Draw countdown timer
-        if (engine.getLastCountdownTime() != null) {
-            currentY = drawCountdownTimer(canvas, engine, currentY);
+        if (face.getLastCountdownTime() != null) {
+            currentY = drawCountdownTimer(canvas, face, now, currentY);
         }
 
         // Draw date and specials
-        if (engine.isShowMinutesDateAndMeetings() || !engine.isAmbient()) {
-            currentY = drawDateAndSpecials(canvas, engine, zonedDateTime, specials, currentY);
+        if (face.isShowMinutesDateAndMeetings() || !face.isAmbient()) {
+            currentY = drawDateAndSpecials(canvas, face, zonedDateTime, specials, currentY);
         }
 
         // Draw top notification
-        String[] topNotificationValues = {"", specials, "+"};
-        drawTextUprightFromCenter(canvas, 0, mCenterY - 16, topNotificationValues[Math.min(2, specials.length())], mHandPaint, null);
+        String topNotification = specials.length() > 1 ? "+" : specials;
+        drawTextUprightFromCenter(canvas, 0, mCenterY - 16, topNotification, mHandPaint, null);
 
         return currentY;
     }
 
-    private float drawCountdownTimer(Canvas canvas, MyWatchFaceService.Engine engine, float currentY) {
-        long correctedTimeMs = engine.getLastCountdownTime().toSecondOfDay() * 1000L - (System.currentTimeMillis() - engine.getLastReadCountdownTime());
+    private float drawCountdownTimer(Canvas canvas, Face face, long now, float currentY) {
+        long correctedTimeMs = face.getCountdownRemainingMillis(now);
         if (correctedTimeMs >= 0) {
-            LocalTime correctedTime = LocalTime.ofSecondOfDay(correctedTimeMs / 1000);
-            String countDownTime = "T-";
-            if (correctedTime.getHour() >= 1) {
-                countDownTime += correctedTime.getHour() + "h";
-            } else if (correctedTime.getMinute() >= 1) {
-                countDownTime += correctedTime.getMinute() + "\'";
-            } else {
-                countDownTime += "<" + correctedTime.getSecond() + "s";
+            int seconds = (int) (correctedTimeMs / 1000);
+            int hour = seconds / 3600;
+            int minute = seconds / 60 % 60;
+            int second = seconds % 60;
+            int countdownKey = countdownKey(correctedTimeMs);
+            if (countdownKey != mCountdownKey) {
+                String countDownTime = "T-";
+                if (hour >= 1) {
+                    countDownTime += hour + "h";
+                } else if (minute >= 1) {
+                    countDownTime += minute + "\'";
+                } else {
+                    countDownTime += "<" + second + "s";
+                }
+                mCountdownText = countDownTime;
+                mCountdownKey = countdownKey;
             }
-            drawTextUprightFromCenter(canvas, 0, mCenterY - currentY, countDownTime, mHandPaint, null);
+            drawTextUprightFromCenter(canvas, 0, mCenterY - currentY, mCountdownText, mHandPaint, null);
             return getNextLine(currentY);
         }
         return currentY;
     }
 
-    private float drawDateAndSpecials(Canvas canvas, MyWatchFaceService.Engine engine, ZonedDateTime zonedDateTime, String specials, float currentY) {
-        String topText = zonedDateTime.format(ISO_DATE_WITH_DAYOFWEEK);
-        topText = engine.isMinimalMode() ? "" : topText;
+    /**
+     * @param remainingMs The remaining time of the countdown, see {@link MyWatchFaceService.Engine#getCountdownRemainingMillis}
+     * @return A key that changes exactly when the shown countdown text changes: the shown value times 3 plus the unit
+     */
+    static int countdownKey(long remainingMs) {
+        if (remainingMs < 0) {
+            return -1;
+        }
+        int seconds = (int) (remainingMs / 1000);
+        int hour = seconds / 3600;
+        int minute = seconds / 60 % 60;
+        return hour >= 1 ? hour * 3 : minute >= 1 ? minute * 3 + 1 : seconds % 60 * 3 + 2;
+    }
+
+    private float drawDateAndSpecials(Canvas canvas, Face face, ZonedDateTime zonedDateTime, String specials, float currentY) {
+        String topText = face.isMinimalMode() ? "" : mTextAtoms.getDate(zonedDateTime);
         drawTextUprightFromCenter(canvas, 0, mCenterY - currentY, topText, mHandPaint, null);
         currentY = getNextLine(currentY);
-        if (!engine.isMinimalMode() && (specials.length() > 1)) {
+        if (!face.isMinimalMode() && (specials.length() > 1)) {
             drawTextUprightFromCenter(canvas, 0, mCenterY - currentY, specials, mHandPaint, null);
             currentY = getNextLine(currentY);
         }
         return currentY;
     }
 
-    private void drawCalendarEvents(Canvas canvas, MyWatchFaceService.Engine engine, ZonedDateTime zonedDateTime, List<CalendarEvent> events, float currentY) {
-        if (engine.isShowMinutesDateAndMeetings()) {
-            for (CalendarEvent event : events) {
-                float degreesFromNorth = getDegreesFromNorth(event.getBegin());
-                mHandPaint.setStyle(Paint.Style.STROKE);
-                drawCircle(canvas, degreesFromNorth, mHourHandLength, engine.isMinimalMode() ? EVENT_MARKER_RADIUS_MINIMAL : EVENT_MARKER_RADIUS, mHandPaint);
-                mHandPaint.setStyle(Paint.Style.FILL);
-                long inFuture = event.getBegin().toInstant().toEpochMilli() - zonedDateTime.toInstant().toEpochMilli();
-                if (!engine.isMinimalMode() && (engine.isShowMinutesDateAndMeetings() || !engine.isAmbient()) && inFuture <= TimeUnit.MINUTES.toMillis(MEETING_PRE_ANNOUNCE_DURATION)) {
-                    String title = event.getTitle();
-                    if (title == null || title.trim().length() == 0) title = "(ohne Titel)";
+    private void drawCalendarEvents(Canvas canvas, Face face, long now, EventIntervalIndex index, float currentY) {
+        if (face.isShowMinutesDateAndMeetings()) {
+            CompactEventStore events = index.getEvents();
+            // events still running or beginning within the pre-announce duration get a title, all others only a marker
+            int firstInDial = index.firstPossiblyRunningAt(now);
+            int firstNotAnnounced = index.firstBeginAfter(now + TimeUnit.MINUTES.toMillis(MEETING_PRE_ANNOUNCE_DURATION));
+            int announced = 0;
+            for (int i = firstInDial; i < events.size(); i++) {
+                if (events.getEnd(i) <= now) {
+                    continue; // already ended, will be gone with the next snapshot
+                }
+                float degreesFromNorth = events.getBeginMinuteOfDay(i) * DEGREES_PER_MINUTE;
+                addCircle(mEventMarkers, mMarkerRing, degreesFromNorth, face.isMinimalMode() ? EVENT_MARKER_RADIUS_MINIMAL : EVENT_MARKER_RADIUS);
+                long inFuture = events.getBegin(i) - now;
+                if (!face.isMinimalMode() && (face.isShowMinutesDateAndMeetings() || !face.isAmbient()) && i < firstNotAnnounced
+                        && announced < mMaxTextLines) {
+                    announced++;
                     boolean isInFuture = inFuture < 0;
-                    String eventHrTitle = isInFuture ?
-                            "-" + TimeUnit.MILLISECONDS.toMinutes(event.getEnd().toInstant().toEpochMilli() - zonedDateTime.toInstant().toEpochMilli())
-                            : "" + TimeUnit.MILLISECONDS.toMinutes(inFuture);
-                    eventHrTitle += " " + title;
-                    int minimizedLength = Math.min(EVENT_TITLE_MAX_LENGTH_LINE_1, eventHrTitle.length());
+                    long shownMinutes = TimeUnit.MILLISECONDS.toMinutes(isInFuture ? events.getEnd(i) - now : inFuture);
+                    int lines = mEventTitleLines.lookup(events.getTitle(i), shownMinutes, isInFuture);
                     drawTextUprightFromCenter(canvas, 0, mCenterY - currentY,
-                            eventHrTitle.substring(0, minimizedLength), mHandPaint, isInFuture ? mLight : null);
+                            mEventTitleLines.getFirstLine(lines), mHandPaint, isInFuture ? mLight : null);
                     currentY = getNextLine(currentY);
-                    if (eventHrTitle.length() > minimizedLength) {
+                    String secondLine = mEventTitleLines.getSecondLine(lines);
+                    if (secondLine != null) {
                         drawTextUprightFromCenter(canvas, 0, mCenterY - currentY,
-                                eventHrTitle.substring(minimizedLength, Math.min(EVENT_TITLE_MAX_LENGTH, eventHrTitle.length())), mHandPaint, isInFuture ? mLight : null);
+                                secondLine, mHandPaint, isInFuture ? mLight : null);
                         currentY = getNextLine(currentY);
                     }
                 }
             }
+            mHandPaint.setStyle(Paint.Style.STROKE);
+            mEventMarkers.draw(canvas, mHandPaint);
+            mHandPaint.setStyle(Paint.Style.FILL);
         }
     }
 
 
-    private void drawInteractiveElements(Canvas canvas, MyWatchFaceService.Engine engine) {
-        if (!engine.isAmbient()) {
+    private void drawInteractiveElements(Canvas canvas, Face face) {
+        if (!face.isAmbient()) {
             float buttonRadius = mCenterX / 3 * 2;
-            if (!engine.isDarkMode()) {
+            if (!face.isDarkMode()) {
                 drawTextUprightFromCenter(canvas, 0, buttonRadius, "●", mHandPaint, mBold);
             } else {
                 drawTextUprightFromCenter(canvas, 0, buttonRadius, "○", mHandPaint, mLight);
             }
-            drawTextUprightFromCenter(canvas, engine.getRotate() + 90, buttonRadius, "↷", mHandPaint, mBold);
-            if (!engine.isMinimalMode() && !engine.isShowMinutesDateAndMeetings()) {
+            drawTextUprightFromCenter(canvas, face.getRotate() + 90, buttonRadius, "↷", mHandPaint, mBold);
+            if (!face.isMinimalMode() && !face.isShowMinutesDateAndMeetings()) {
                 drawTextUprightFromCenter(canvas, 180, mCenterY / 3 * 2,
-                        engine.getZonedDateTime().format(MINUTES_FORMATTER), mHandPaint, null);
+                        mTextAtoms.getMinutes(face.getZonedDateTime()), mHandPaint, null);
             }
         }
     }
 
-    private void adaptBackGroundNrWithMeetings(Canvas canvas, MyWatchFaceService.Engine engine, int minutes, float textSize, List<CalendarEvent> events) {
+    private void adaptBackGroundNrWithMeetings(Canvas canvas, long now, int minutes, float textSize, BusyTimeline timeline) {
         float minuteWidth = textSize / 60f;
         float remainingRelativeHour = 1 - (minutes / 60f);
         int lastMinutes = minutes;
 
-        for (CalendarEvent event : events) {
-            if (!event.isAllDay() && isUpcomingMeeting(engine, event)) {
-                long minutesOfEvent = minutes + TimeUnit.MILLISECONDS.toMinutes(event.getBegin().toInstant().toEpochMilli() - engine.getZonedDateTime().toInstant().toEpochMilli());
+        // upcoming meetings are the begin bits in the minutes (now, now + pre-announce duration]
+        for (int inMinutes = timeline.nextBeginOffset(now, 1);
+             inMinutes > 0 && inMinutes <= MEETING_PRE_ANNOUNCE_DURATION;
+             inMinutes = timeline.nextBeginOffset(now, inMinutes + 1)) {
+            int minutesOfEvent = minutes + inMinutes;
 
-                if (minutesOfEvent >= 60) {
-                    drawMeetingIndicatorLine(canvas, textSize, minuteWidth, (minutesOfEvent - 60) / 60f);
-                } else {
-                    remainingRelativeHour -= drawMeetingIndicatorBlank(canvas, textSize, remainingRelativeHour, lastMinutes, (int) minutesOfEvent);
-                    lastMinutes = (int) minutesOfEvent + 1;
-                }
+            if (minutesOfEvent >= 60) {
+                drawMeetingIndicatorLine(canvas, textSize, minuteWidth, (minutesOfEvent - 60) / 60f);
+            } else {
+                remainingRelativeHour -= drawMeetingIndicatorBlank(canvas, textSize, remainingRelativeHour, lastMinutes, minutesOfEvent);
+                lastMinutes = minutesOfEvent + 1;
             }
         }
         drawRemainingHourIndicator(canvas, textSize, remainingRelativeHour);
     }
 
-    private boolean isUpcomingMeeting(MyWatchFaceService.Engine engine, CalendarEvent event) {
-        long eventLengthMs = event.getEnd().toInstant().toEpochMilli() - event.getBegin().toInstant().toEpochMilli();
-        long inFuture = event.getBegin().toInstant().toEpochMilli() - engine.getZonedDateTime().toInstant().toEpochMilli();
-        return eventLengthMs < TimeUnit.HOURS.toMillis(24) && inFuture > 0 && inFuture <= TimeUnit.MINUTES.toMillis(MEETING_PRE_ANNOUNCE_DURATION);
-    }
-
     private void drawMeetingIndicatorLine(Canvas canvas, float textSize, float minuteWidth, float relativeMeetingHour) {
         float yFill = mCenterY - (textSize * (0.5f - relativeMeetingHour));
         mBackgroundPaint.setStrokeWidth(minuteWidth);
@@ -422,11 +525,11 @@ public class WatchFaceDrawer {
     }
 
 
-    private void writeHour(Canvas canvas, MyWatchFaceService.Engine engine, float radiusCenter, int hour, boolean writeNumber, boolean writeMarker) {
-        writeHour(canvas, engine, radiusCenter, hour, "" + hour, writeNumber, writeMarker, true);
+    private void writeHour(Canvas canvas, Face face, float radiusCenter, int hour, boolean writeNumber, boolean writeMarker) {
+        writeHour(canvas, face, radiusCenter, hour, HOUR_TEXTS[hour], writeNumber, writeMarker, true);
     }
 
-    private void writeHour(Canvas canvas, MyWatchFaceService.Engine engine, float radiusCenter, int hour, String hourText,
+    private void writeHour(Canvas canvas, Face face, float radiusCenter, int hour, String hourText,
                            boolean writeNumber, boolean writeMarker, boolean adjustColor) {
         float degreesFromNorth = hour * DEGREES_PER_HOUR;
 
@@ -440,40 +543,39 @@ public class WatchFaceDrawer {
                     hourText, mHandPaint, null);
         }
         if (writeMarker) {
-            drawCircle(canvas, degreesFromNorth, mHourHandLength, HOUR_MARKER_RADIUS, mHandPaint);
-            // black dot in the middle
-            Float nextDimmObject = engine.getDimmingController().getNextDimm();
-            float nextDimm = nextDimmObject == null ? 1 : nextDimmObject;
-            drawCircle(canvas, degreesFromNorth, mHourHandLength, engine.isDarkMode() && nextDimm < DimmingController.VERY_DARK ? 3 : 2, mBackgroundPaint
-            );
+            drawCircle(canvas, mMarkerRing, degreesFromNorth, HOUR_MARKER_RADIUS, mHandPaint);
+            // black dot in the middle, drawn together with the others at the end of the markers
+            float nextDimm = face.getNextDimm();
+            addCircle(mMarkerDots, mMarkerRing, degreesFromNorth, face.isDarkMode() && nextDimm < DimmingController.VERY_DARK ? 3 : 2);
         }
         mHandPaint.setColor(handColor);
     }
 
     private void drawCircle(Canvas canvas, float rotationFromNorth, float distanceFromCenter, float radius, Paint paint) {
-        canvas.save();
-        canvas.rotate(rotationFromNorth, mCenterX, mCenterY);
-        canvas.drawCircle(mCenterX, mCenterY - distanceFromCenter, radius, paint);
-        canvas.restore();
+        canvas.drawCircle(mGeometry.getX(rotationFromNorth, distanceFromCenter),
+                mGeometry.getY(rotationFromNorth, distanceFromCenter), radius, paint);
+    }
+
+    private void drawCircle(Canvas canvas, DialGeometry.Ring ring, float rotationFromNorth, float radius, Paint paint) {
+        canvas.drawCircle(ring.getX(rotationFromNorth), ring.getY(rotationFromNorth), radius, paint);
+    }
+
+    private void addCircle(CircleBatch batch, DialGeometry.Ring ring, float rotationFromNorth, float radius) {
+        batch.add(ring.getX(rotationFromNorth), ring.getY(rotationFromNorth), radius);
     }
 
     private void drawLineFromCenter(Canvas canvas, float degreesFromNorth, float startFromCenter, float endFromCenter, Paint paint) {
-        canvas.save();
-        canvas.rotate(degreesFromNorth, mCenterX, mCenterY);
-        canvas.drawLine(mCenterX, mCenterY - startFromCenter, mCenterX, mCenterY - endFromCenter,
+        canvas.drawLine(mGeometry.getX(degreesFromNorth, startFromCenter), mGeometry.getY(degreesFromNorth, startFromCenter),
+                mGeometry.getX(degreesFromNorth, endFromCenter), mGeometry.getY(degreesFromNorth, endFromCenter),
                 paint);
-        canvas.restore();
     }
 
     private void drawTextUprightFromCenter(Canvas canvas, float degreesFromNorth, float radiusCenter, String text, Paint paint, Typeface typeface) {
-        float textLengthX = paint.measureText(text);
+        float textLengthX = mTextMeasureCache.measureText(text, paint);
         float textLengthY = paint.getTextSize();
         //                          center text
-        float x = mCenterX - textLengthX / 2 + radiusCenter *
-                (float) Math.cos(Math.toRadians(degreesFromNorth - 90f));
-        float y = mCenterY + textLengthY / 24 * 7 +
-                radiusCenter *
-                (float) Math.sin(Math.toRadians(degreesFromNorth - 90f));
+        float x = mGeometry.getX(degreesFromNorth, radiusCenter) - textLengthX / 2;
+        float y = mGeometry.getY(degreesFromNorth, radiusCenter) + textLengthY / 24 * 7;
         if (typeface != null) {
             Typeface prevTypeface = paint.getTypeface();
             paint.setTypeface(typeface);
@@ -484,6 +586,14 @@ public class WatchFaceDrawer {
         }
     }
 
+    private float getHourDotCenter() {
+        return mHourHandLength + 2 * RAND_RESERVE;
+    }
+
+    private float getTopInfoStart() {
+        return mCenterY - mCenterX * 0.8f;
+    }
+
     private float getNextLine(float currentY) {
         return currentY + 1.1f * TEXT_SIZE;
     }
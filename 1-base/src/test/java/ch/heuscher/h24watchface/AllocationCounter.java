@@ -0,0 +1,38 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated by the current thread between {@link #start()} and {@link #stop()}.
+ * Fails the test if the JVM cannot count them, an allocation test that is skipped proves nothing.
+ */
+final class AllocationCounter {
+
+    private final com.sun.management.ThreadMXBean mThreadBean;
+    private final long mThreadId = Thread.currentThread().getId();
+    private long mStart;
+
+    AllocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assertTrue("No allocation counting on this JVM", bean instanceof com.sun.management.ThreadMXBean);
+        mThreadBean = (com.sun.management.ThreadMXBean) bean;
+        assertTrue("No allocation counting on this JVM", mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+        // the first calls may allocate while the bean initializes
+        start();
+        stop();
+    }
+
+    void start() {
+        mStart = mThreadBean.getThreadAllocatedBytes(mThreadId);
+    }
+
+    /**
+     * @return The bytes allocated since {@link #start()}
+     */
+    long stop() {
+        return mThreadBean.getThreadAllocatedBytes(mThreadId) - mStart;
+    }
+}
@@ -0,0 +1,112 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+public class BusyTimelineTest {
+
+    private static final ZoneId ZURICH = ZoneId.of("Europe/Zurich");
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static long at(String zonedDateTime) {
+        return ZonedDateTime.parse(zonedDateTime).toInstant().toEpochMilli();
+    }
+
+    private static CompactEventStore events(long... beginsAndEnds) {
+        CompactEventStore.Builder builder = new CompactEventStore.Builder(ZURICH);
+        for (int i = 0; i < beginsAndEnds.length; i += 2) {
+            builder.add(beginsAndEnds[i], beginsAndEnds[i + 1], "Meeting " + i, 0);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void marksBusyMinutesAndBegins() {
+        long anchor = at("2026-06-10T08:00:30+02:00[Europe/Zurich]");
+        long begin = at("2026-06-10T08:10:00+02:00[Europe/Zurich]");
+        BusyTimeline timeline = new BusyTimeline(events(begin, begin + 30 * MINUTE), anchor);
+
+        assertFalse(timeline.isBusy(begin - MINUTE));
+        assertTrue(timeline.isBusy(begin));
+        assertTrue(timeline.isBusy(begin + 29 * MINUTE));
+        assertFalse(timeline.isBusy(begin + 30 * MINUTE));
+        assertEquals(10, timeline.nextBeginOffset(anchor, 1));
+        assertEquals(-1, timeline.nextBeginOffset(anchor, 11));
+        assertEquals(5, timeline.nextBeginOffset(anchor + 5 * MINUTE, 1));
+    }
+
+    @Test
+    public void ignoresAllDayEvents() {
+        long anchor = at("2026-06-10T00:00:00+02:00[Europe/Zurich]");
+        CompactEventStore events = new CompactEventStore.Builder(ZURICH)
+                .add(anchor, anchor + TimeUnit.DAYS.toMillis(1), "Holiday", CompactEventStore.FLAG_ALL_DAY)
+                .build();
+        BusyTimeline timeline = new BusyTimeline(events, anchor);
+
+        assertFalse(timeline.isBusy(anchor + 60 * MINUTE));
+        assertEquals(-1, timeline.nextBeginOffset(anchor, 0));
+    }
+
+    @Test
+    public void wrapsAroundTheRingAndEndsAfterADay() {
+        // the epoch minute of the anchor is the last bit of the ring
+        long anchor = TimeUnit.DAYS.toMillis(20000) - MINUTE;
+        long begin = anchor + 5 * MINUTE;
+        long beyondTheDay = anchor + TimeUnit.DAYS.toMillis(1) + 5 * MINUTE;
+        BusyTimeline timeline = new BusyTimeline(events(anchor - 5 * MINUTE, anchor + 2 * MINUTE,
+                begin, begin + 20 * MINUTE, beyondTheDay, beyondTheDay + MINUTE), anchor);
+
+        assertTrue(timeline.isBusy(anchor));
+        assertTrue(timeline.isBusy(anchor + MINUTE));
+        assertFalse(timeline.isBusy(anchor + 2 * MINUTE));
+        assertTrue(timeline.isBusy(begin + 19 * MINUTE));
+        assertFalse(timeline.isBusy(beyondTheDay));
+        assertEquals(5, timeline.nextBeginOffset(anchor, 1));
+        assertEquals(-1, timeline.nextBeginOffset(anchor, 6));
+    }
+
+    @Test
+    public void advanceClearsThePassedMinutesAndAddsTheNewEvents() {
+        long anchor = at("2026-06-10T08:00:00+02:00[Europe/Zurich]");
+        long first = anchor + 10 * MINUTE;
+        BusyTimeline timeline = new BusyTimeline(events(first, first + 10 * MINUTE), anchor);
+
+        long newAnchor = anchor + 15 * MINUTE;
+        long added = anchor + TimeUnit.DAYS.toMillis(1) + 5 * MINUTE;
+        BusyTimeline advanced = timeline.advance(newAnchor, events(added, added + 5 * MINUTE));
+
+        assertFalse(advanced.isBusy(first));
+        assertTrue(advanced.isBusy(newAnchor));
+        assertFalse(advanced.isBusy(first + 10 * MINUTE));
+        assertTrue(advanced.isBusy(added));
+        assertEquals(TimeUnit.DAYS.toMinutes(1) - 10, advanced.nextBeginOffset(newAnchor, 1));
+        // the old timeline is unchanged
+        assertTrue(timeline.isBusy(first));
+    }
+
+    @Test
+    public void keepsTheMinutesOverADaylightSavingChange() {
+        // the clocks go from 02:00 CET to 03:00 CEST in the night to 2026-03-29
+        long anchor = at("2026-03-29T00:30:00+01:00[Europe/Zurich]");
+        long begin = at("2026-03-29T09:00:00+02:00[Europe/Zurich]");
+        BusyTimeline timeline = new BusyTimeline(events(begin, begin + 30 * MINUTE), anchor);
+
+        long afterTheChange = at("2026-03-29T04:00:00+02:00[Europe/Zurich]");
+        BusyTimeline advanced = timeline.advance(afterTheChange, CompactEventStore.EMPTY);
+
+        assertFalse(advanced.isBusy(begin - MINUTE));
+        assertTrue(advanced.isBusy(begin));
+        assertTrue(advanced.isBusy(begin + 29 * MINUTE));
+        assertFalse(advanced.isBusy(begin + 30 * MINUTE));
+        // 04:00 to 09:00 on the wall clock, all after the change
+        assertEquals(300, advanced.nextBeginOffset(afterTheChange, 1));
+        assertEquals(300, timeline.nextBeginOffset(afterTheChange, 1));
+    }
+}
@@ -0,0 +1,112 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the built selection and sort order against thousands of synthetic instances in an in-memory SQLite
+ * database, with the arguments bound as text like the calendar provider does.
+ */
+public class CalendarQueryBuilderSqliteTest {
+
+    private static final int ROWS = 5000;
+    private static final long NOW = 1_780_000_000_000L;
+    private static final long MAX_DURATION = TimeUnit.HOURS.toMillis(24);
+
+    private Connection mConnection;
+    private int mExpectedRows = 0;
+
+    @Before
+    public void createInstances() throws SQLException {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute("CREATE TABLE Instances (begin INTEGER, end INTEGER, allDay INTEGER,"
+                    + " availability INTEGER, title TEXT)");
+        }
+        Random random = new Random(24);
+        mConnection.setAutoCommit(false);
+        try (PreparedStatement insert = mConnection.prepareStatement("INSERT INTO Instances VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                long begin = NOW + random.nextInt((int) TimeUnit.HOURS.toMillis(18));
+                // mostly meetings, some of them longer than a day
+                long duration = random.nextInt(10) == 0
+                        ? MAX_DURATION + random.nextInt((int) TimeUnit.DAYS.toMillis(3))
+                        : TimeUnit.MINUTES.toMillis(15 + random.nextInt(120));
+                boolean allDay = random.nextInt(8) == 0;
+                int availability = random.nextInt(3);
+                insert.setLong(1, begin);
+                insert.setLong(2, begin + duration);
+                insert.setInt(3, allDay ? 1 : 0);
+                insert.setInt(4, availability);
+                insert.setString(5, "Event " + i);
+                insert.addBatch();
+                if (duration < MAX_DURATION && !allDay && availability == 0 && begin > NOW) {
+                    mExpectedRows++;
+                }
+            }
+            insert.executeBatch();
+        }
+        mConnection.commit();
+    }
+
+    @After
+    public void close() throws SQLException {
+        mConnection.close();
+    }
+
+    @Test
+    public void selectsAndOrdersInTheDatabase() throws SQLException {
+        CalendarQueryBuilder builder = new CalendarQueryBuilder()
+                .busyOnly()
+                .excludeAllDay()
+                .shorterThan(MAX_DURATION)
+                .beginningAfter(NOW)
+                .orderByBegin();
+
+        long start = System.nanoTime();
+        int rows = 0;
+        long previousBegin = Long.MIN_VALUE;
+        try (ResultSet result = query(builder)) {
+            while (result.next()) {
+                long begin = result.getLong(1);
+                assertTrue(begin >= previousBegin);
+                assertTrue(begin > NOW);
+                assertTrue(result.getLong(2) - begin < MAX_DURATION);
+                assertEquals(0, result.getInt(3));
+                assertEquals(0, result.getInt(4));
+                previousBegin = begin;
+                rows++;
+            }
+        }
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+        assertTrue(mExpectedRows > 0 && mExpectedRows < ROWS);
+        assertEquals(mExpectedRows, rows);
+        System.out.println("Selected " + rows + " of " + ROWS + " instances in " + elapsedMicros + " us");
+    }
+
+    private ResultSet query(CalendarQueryBuilder builder) throws SQLException {
+        PreparedStatement query = mConnection.prepareStatement("SELECT begin, end, allDay, availability FROM Instances"
+                + " WHERE " + builder.getSelection() + " ORDER BY " + builder.getSortOrder());
+        query.closeOnCompletion();
+        String[] args = builder.getSelectionArgs();
+        for (int i = 0; i < args.length; i++) {
+            // the provider binds all selection arguments as text
+            query.setString(i + 1, args[i]);
+        }
+        return query.executeQuery();
+    }
+}
@@ -0,0 +1,36 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class CalendarQueryBuilderTest {
+
+    @Test
+    public void buildsNothingWithoutConditions() {
+        CalendarQueryBuilder builder = new CalendarQueryBuilder();
+        assertNull(builder.getSelection());
+        assertNull(builder.getSelectionArgs());
+        assertNull(builder.getSortOrder());
+    }
+
+    @Test
+    public void joinsTheConditionsAndBindsTheArgumentsAsIntegers() {
+        CalendarQueryBuilder builder = new CalendarQueryBuilder()
+                .busyOnly()
+                .excludeAllDay()
+                .shorterThan(86400000L)
+                .beginningAfter(1234L)
+                .orderByBegin();
+
+        assertEquals("availability = CAST(? AS INTEGER)"
+                        + " AND allDay = CAST(? AS INTEGER)"
+                        + " AND (end - begin) < CAST(? AS INTEGER)"
+                        + " AND begin > CAST(? AS INTEGER)",
+                builder.getSelection());
+        assertArrayEquals(new String[]{"0", "0", "86400000", "1234"}, builder.getSelectionArgs());
+        assertEquals("begin ASC", builder.getSortOrder());
+    }
+}
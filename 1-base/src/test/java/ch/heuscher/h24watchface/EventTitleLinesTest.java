@@ -0,0 +1,69 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class EventTitleLinesTest {
+
+    private static final int EVENTS = 12;
+    private static final String[] TITLES = new String[EVENTS];
+
+    static {
+        for (int i = 0; i < EVENTS; i++) {
+            TITLES[i] = "Meeting " + i;
+        }
+    }
+
+    @Test
+    public void buildsTheLines() {
+        EventTitleLines lines = new EventTitleLines(2);
+        int slot = lines.lookup("Meeting", 12, false);
+        assertEquals("12 Meeting", lines.getFirstLine(slot));
+        assertNull(lines.getSecondLine(slot));
+
+        slot = lines.lookup(" ", 5, true);
+        assertEquals("-5 (ohne Titel)", lines.getFirstLine(slot));
+
+        slot = lines.lookup("A rather long meeting title that wraps", 3, false);
+        assertEquals("3 A rather long meetin", lines.getFirstLine(slot));
+        assertEquals("g title that wraps", lines.getSecondLine(slot));
+    }
+
+    @Test
+    public void keepsAllEventsOfAMinuteWhenThereAreAsManySlots() {
+        EventTitleLines lines = new EventTitleLines(EVENTS);
+        String[] firstFrame = new String[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            firstFrame[i] = lines.getFirstLine(lines.lookup(TITLES[i], i, false));
+        }
+        for (int frame = 0; frame < 3; frame++) {
+            for (int i = 0; i < EVENTS; i++) {
+                assertSame(firstFrame[i], lines.getFirstLine(lines.lookup(TITLES[i], i, false)));
+            }
+        }
+    }
+
+    @Test
+    public void doesNotAllocateInTheSteadyState() {
+        AllocationCounter counter = new AllocationCounter();
+        EventTitleLines lines = new EventTitleLines(EVENTS);
+        int checksum = lookUpAll(lines, 1000); // warm up, fills the cache
+        counter.start();
+        checksum += lookUpAll(lines, 10000);
+        assertEquals(0, counter.stop());
+        assertEquals(11000 * EVENTS * (EVENTS - 1) / 2, checksum);
+    }
+
+    private static int lookUpAll(EventTitleLines lines, int frames) {
+        int checksum = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            for (int i = 0; i < EVENTS; i++) {
+                checksum += lines.lookup(TITLES[i], i, false);
+            }
+        }
+        return checksum;
+    }
+}
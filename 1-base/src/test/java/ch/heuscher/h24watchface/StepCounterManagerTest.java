@@ -0,0 +1,39 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StepCounterManagerTest {
+
+    private static final long DAY = 20000;
+
+    @Test
+    public void countsFromTheFirstSample() {
+        assertEquals(5000, StepCounterManager.computeStepsAtMidnight(StepHistory.NO_DAY, DAY, 0, 0, 5000));
+    }
+
+    @Test
+    public void keepsTheBaselineDuringTheDay() {
+        assertEquals(1000, StepCounterManager.computeStepsAtMidnight(DAY, DAY, 1500, 1000, 1600));
+    }
+
+    @Test
+    public void carriesTheStepsOverARebootDuringTheDay() {
+        // 500 steps before the reboot, the counter starts again at 0
+        assertEquals(-500, StepCounterManager.computeStepsAtMidnight(DAY, DAY, 1500, 1000, 20));
+    }
+
+    @Test
+    public void countsTheStepsSinceYesterdaysLastSample() {
+        assertEquals(1500, StepCounterManager.computeStepsAtMidnight(DAY, DAY + 1, 1500, 1000, 1600));
+        // rebooted over night
+        assertEquals(0, StepCounterManager.computeStepsAtMidnight(DAY, DAY + 1, 1500, 1000, 20));
+    }
+
+    @Test
+    public void countsFromNowAfterDaysWithoutSample() {
+        assertEquals(9000, StepCounterManager.computeStepsAtMidnight(DAY, DAY + 3, 1500, 1000, 9000));
+        assertEquals(20, StepCounterManager.computeStepsAtMidnight(DAY, DAY + 3, 1500, 1000, 20));
+    }
+}
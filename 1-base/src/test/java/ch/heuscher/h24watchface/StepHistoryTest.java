@@ -0,0 +1,69 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class StepHistoryTest {
+
+    private static final long DAY = 20000;
+    private static final long HOUR = DAY * StepHistory.HOURS_PER_DAY;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File newFile() throws IOException {
+        return new File(mFolder.newFolder(), "step_history");
+    }
+
+    @Test
+    public void startsWithoutBaseline() throws IOException {
+        StepHistory history = new StepHistory(newFile());
+        assertEquals(StepHistory.NO_DAY, history.getBaselineEpochDay());
+        assertEquals(StepHistory.UNKNOWN, history.getCumulativeSteps(HOUR));
+    }
+
+    @Test
+    public void restoresTheBaselineFromTheFile() throws IOException {
+        File file = newFile();
+        StepHistory history = new StepHistory(file);
+        history.record(HOUR + 9, 1000, 1500);
+        history.record(HOUR + 10, 1000, 1800);
+        history.flush();
+
+        StepHistory restored = new StepHistory(file);
+        assertEquals(DAY, restored.getBaselineEpochDay());
+        assertEquals(1000, restored.getStepsAtMidnight());
+        assertEquals(1800, restored.getLastSteps());
+        assertEquals(500, restored.getCumulativeSteps(HOUR + 9));
+        assertEquals(800, restored.getCumulativeSteps(HOUR + 10));
+    }
+
+    @Test
+    public void tellsWhenTheHourChanged() throws IOException {
+        StepHistory history = new StepHistory(newFile());
+        assertTrue(history.record(HOUR, 0, 10));
+        assertFalse(history.record(HOUR, 0, 20));
+        assertTrue(history.record(HOUR + 1, 0, 30));
+        assertEquals(20, history.getCumulativeSteps(HOUR));
+    }
+
+    @Test
+    public void overwritesTheOldestDayAfterWrappingAround() throws IOException {
+        StepHistory history = new StepHistory(newFile());
+        history.record(HOUR + 9, 0, 100);
+        long weekLater = HOUR + 9 + StepHistory.DAYS * StepHistory.HOURS_PER_DAY;
+        history.record(weekLater, 5000, 5200);
+
+        assertEquals(StepHistory.UNKNOWN, history.getCumulativeSteps(HOUR + 9));
+        assertEquals(200, history.getCumulativeSteps(weekLater));
+        assertEquals(DAY + StepHistory.DAYS, history.getBaselineEpochDay());
+    }
+}
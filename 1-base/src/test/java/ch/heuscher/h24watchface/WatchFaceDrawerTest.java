@@ -0,0 +1,207 @@
+package ch.heuscher.h24watchface;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a simulated day of frames against the stubbed canvas of the unit tests and counts the allocations.
+ * Everything the drawer caches may be rebuilt by the first frame of a minute, all further frames of the minute
+ * must not allocate. The day is drawn twice and only the second pass is counted.
+ *
+ * The light mode markers and the minimal mode are drawn into the offscreen dial layer, which the stubs cannot
+ * create; the other modes are rendered in turn.
+ */
+public class WatchFaceDrawerTest {
+
+    private static final int SIZE = 454;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int FRAMES_PER_MINUTE = 6;
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long TICK_DELAY_MILLIS = 50;
+
+    private static final class FakeFace implements WatchFaceDrawer.Face {
+        private final BrightnessSettings mBrightnessSettings = new BrightnessSettings(null, () -> { });
+        private final BatteryMonitor mBatteryMonitor = new BatteryMonitor(null, () -> { });
+        private final AlarmMonitor mAlarmMonitor = new AlarmMonitor(null, () -> { });
+        private final FrameClock mFrameClock;
+        private final CalendarSnapshot mSnapshot;
+        private final long mCountdownEnd;
+        private boolean mAmbient;
+        private boolean mDarkMode;
+        private boolean mShowMinutesDateAndMeetings;
+        private int mSteps = 12000;
+        private int mStepsToday = 800;
+        private int mFramesDrawn = 0;
+
+        private FakeFace(FrameClock frameClock, CalendarSnapshot snapshot, long countdownEnd) {
+            mFrameClock = frameClock;
+            mSnapshot = snapshot;
+            mCountdownEnd = countdownEnd;
+        }
+
+        @Override
+        public boolean isAmbient() {
+            return mAmbient;
+        }
+
+        @Override
+        public boolean isDarkMode() {
+            return mDarkMode;
+        }
+
+        @Override
+        public boolean isMinimalMode() {
+            return false;
+        }
+
+        @Override
+        public boolean isShowMinutesDateAndMeetings() {
+            return mShowMinutesDateAndMeetings;
+        }
+
+        @Override
+        public float getRotate() {
+            return 0;
+        }
+
+        @Override
+        public float getNextDimm() {
+            return 0.5f;
+        }
+
+        @Override
+        public float getMinLuminance() {
+            return DimmingController.DEFAULT_MIN_LUMINANCE;
+        }
+
+        @Override
+        public void setLastDimm(float lastDimm) {
+            mFramesDrawn++;
+        }
+
+        @Override
+        public BrightnessSettings getBrightnessSettings() {
+            return mBrightnessSettings;
+        }
+
+        @Override
+        public CalendarSnapshot getCalendarSnapshot() {
+            return mSnapshot;
+        }
+
+        @Override
+        public int getSteps() {
+            return mSteps;
+        }
+
+        @Override
+        public int getStepsToday() {
+            return mStepsToday;
+        }
+
+        @Override
+        public String getSpecials() {
+            return "";
+        }
+
+        @Override
+        public BatteryMonitor getBatteryMonitor() {
+            return mBatteryMonitor;
+        }
+
+        @Override
+        public AlarmMonitor getAlarmMonitor() {
+            return mAlarmMonitor;
+        }
+
+        @Override
+        public LocalTime getLastCountdownTime() {
+            return LocalTime.NOON;
+        }
+
+        @Override
+        public long getCountdownRemainingMillis(long now) {
+            return mCountdownEnd - now;
+        }
+
+        @Override
+        public ZonedDateTime getZonedDateTime() {
+            return mFrameClock.getZonedDateTime();
+        }
+    }
+
+    @Test
+    public void doesNotAllocateAfterTheFirstFrameOfAMinute() {
+        ZoneId zone = ZoneId.systemDefault();
+        long dayStart = ZonedDateTime.of(2026, 6, 15, 0, 0, 0, 0, zone).toInstant().toEpochMilli();
+        FrameClock frameClock = new FrameClock();
+        // a countdown that is shown in hours the whole day
+        FakeFace face = new FakeFace(frameClock, meetingsOf(dayStart, zone), dayStart + TimeUnit.HOURS.toMillis(30));
+        WatchFaceDrawer drawer = new WatchFaceDrawer();
+        drawer.onSurfaceChanged(SIZE, SIZE);
+        AllocationCounter counter = new AllocationCounter();
+
+        // the first pass runs every path of the day once, so the JVM has linked and compiled them
+        drawDay(drawer, face, frameClock, dayStart, counter);
+        long allocated = drawDay(drawer, face, frameClock, dayStart, counter);
+
+        assertEquals(0, allocated);
+        assertEquals(2 * MINUTES_PER_DAY * (FRAMES_PER_MINUTE + 1), face.mFramesDrawn);
+    }
+
+    /**
+     * Draws the frames of a day, counting the allocations of all but the first frame of each minute.
+     *
+     * @return The bytes allocated by the counted frames
+     */
+    private static long drawDay(WatchFaceDrawer drawer, FakeFace face, FrameClock frameClock, long dayStart,
+                                AllocationCounter counter) {
+        Canvas canvas = new Canvas();
+        long allocated = 0;
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            // the tick arrives a little after the full minute, as on the watch
+            long minuteStart = dayStart + minute * MILLIS_PER_MINUTE + TICK_DELAY_MILLIS;
+            // dark interactive, dark ambient and light ambient, with and without minutes, date and meetings
+            face.mDarkMode = minute % 3 != 2;
+            face.mAmbient = minute % 3 != 0;
+            face.mShowMinutesDateAndMeetings = minute % 4 != 3;
+            face.mSteps += 17;
+            face.mStepsToday += 17;
+            frameClock.update(minuteStart);
+            // first frame of the minute, may rebuild the texts of the minute
+            drawer.onDraw(canvas, face, frameClock.getZonedDateTime(), minuteStart);
+
+            for (int frame = 1; frame <= FRAMES_PER_MINUTE; frame++) {
+                long now = minuteStart + frame * (MILLIS_PER_MINUTE - TICK_DELAY_MILLIS) / (FRAMES_PER_MINUTE + 1);
+                frameClock.update(now);
+                counter.start();
+                drawer.onDraw(canvas, face, frameClock.getZonedDateTime(), now);
+                allocated += counter.stop();
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * A busy day: a meeting every 40 minutes from 7 to 19 o'clock, some with titles that need two lines.
+     */
+    private static CalendarSnapshot meetingsOf(long dayStart, ZoneId zone) {
+        CompactEventStore.Builder events = new CompactEventStore.Builder(zone);
+        int meeting = 0;
+        for (long begin = dayStart + TimeUnit.HOURS.toMillis(7); begin < dayStart + TimeUnit.HOURS.toMillis(19);
+             begin += TimeUnit.MINUTES.toMillis(40)) {
+            String title = meeting % 3 == 0 ? "Weekly planning of the watch face project " + meeting : "Meeting " + meeting;
+            events.add(begin, begin + TimeUnit.MINUTES.toMillis(30), title, 0);
+            meeting++;
+        }
+        return CalendarSnapshot.of(events.build(), dayStart, dayStart + TimeUnit.DAYS.toMillis(1));
+    }
+}